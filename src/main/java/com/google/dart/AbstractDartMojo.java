@@ -1,26 +1,44 @@
 package com.google.dart;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.DirectoryFileFilter;
-import org.apache.commons.io.filefilter.NameFileFilter;
+import com.google.dart.util.BuildMetrics;
+import com.google.dart.util.DartImportGraph;
+import com.google.dart.util.PathIndex;
+import com.google.dart.util.ProcessScheduler;
+import com.google.dart.util.PubspecFinder;
+import com.google.dart.util.SdkDescriptor;
+import com.google.dart.util.SystemResources;
+import com.google.dart.util.TestResult;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class AbstractDartMojo extends AbstractMojo {
 
+    /**
+     * Insert runtime type checks and enable assertions (checked mode).
+     */
+    private final static String ARGUMENT_CHECKED_MODE = "--checked";
+
+    /**
+     * The replacement of the checked mode in sdks without it.
+     */
+    private final static String ARGUMENT_ENABLE_ASSERTS = "--enable-asserts";
+
     /**
      * The directory to run the compiler from if fork is true.
      *
@@ -53,6 +71,46 @@ public abstract class AbstractDartMojo extends AbstractMojo {
     @Parameter
     private List<File> compileSourceRoots = new ArrayList<>();
 
+    /**
+     * The maximum number of dart processes (dart2js, pub, tests, scripts) running at the same time, shared by all
+     * modules of a parallel reactor build. Defaults to the number of available cpus. The first execution in a build
+     * decides the limit for all others; an execution asking for another limit while processes run is warned.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "0", property = "dart.processes")
+    private int processLimit;
+
+    /**
+     * The directory the probed capabilities of dart-sdks are cached in, so the tools of an sdk are probed once and
+     * not by every build.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${user.home}/.m2/dart-sdk-descriptors", property = "dart.sdk.cache")
+    private File sdkCacheDirectory;
+
+    /**
+     * The directory the metrics of every execution are written to as <code>&lt;goal&gt;.json</code>: the duration
+     * of every phase and every dart process, its exit code and output size and whether it was skipped as up to date.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${project.build.directory}/dart-metrics", property = "dart.metrics.directory")
+    private File metricsDirectory;
+
+    private volatile BuildMetrics metrics = new BuildMetrics();
+
+    private ProcessScheduler processScheduler;
+
+    private PathIndex<File> compileSourceRootIndex;
+
+    private final Set<String> reportedUnsupportedFlags = new HashSet<>();
+
+    private final Map<File, DartImportGraph> importGraphs = new HashMap<>();
+
+    private volatile PathIndex<File> dartPackageRootIndex;
+
     // ----------------------------------------------------------------------
     // Read-only parameters
     // ----------------------------------------------------------------------
@@ -71,7 +129,7 @@ public abstract class AbstractDartMojo extends AbstractMojo {
                 + dartSdk.getAbsolutePath());
         }
         getLog().info("Dart-sdk configured to " + dartSdk);
-        getLog().info("Version: " + readDartVersion());
+        getLog().info("Version: " + getSdkDescriptor().getVersion());
 
     }
 
@@ -83,6 +141,156 @@ public abstract class AbstractDartMojo extends AbstractMojo {
         return basedir;
     }
 
+    /**
+     * The scheduler limiting the dart processes of all executions in this jvm, sharing the permits fairly between
+     * the modules of a build.
+     */
+    protected synchronized ProcessScheduler getProcessScheduler() {
+        if (processScheduler == null) {
+            processScheduler = ProcessScheduler.getInstance(processLimit, basedir.getAbsolutePath());
+            final int requested = ProcessScheduler.resolvePermitCount(processLimit);
+            if (processScheduler.getPermitCount() != requested) {
+                getLog().warn("Another execution in this jvm limits the dart processes to "
+                    + processScheduler.getPermitCount() + ", dart.processes=" + requested + " is ignored.");
+            }
+        }
+        return processScheduler;
+    }
+
+    /**
+     * Warn if the given number of threads exceeds the process limit, as the threads beyond it only wait.
+     *
+     * @param parameter the thread count parameter, e.g. <code>dart.test.threadCount</code>
+     */
+    protected void checkThreadCount(final String parameter, final int threads) {
+        final int permits = getProcessScheduler().getPermitCount();
+        if (threads > permits) {
+            getLog().warn(parameter + "=" + threads + " exceeds the limit of " + permits
+                + " dart processes running at the same time, increase dart.processes to run more.");
+        }
+    }
+
+    /**
+     * The metrics of this execution.
+     */
+    protected BuildMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Start recording new metrics, e.g. for the next cycle of a goal running until it is stopped. No process may
+     * run meanwhile.
+     */
+    protected void resetMetrics() {
+        metrics = new BuildMetrics();
+    }
+
+    /**
+     * Write the metrics of this execution to the {@link #metricsDirectory} and log their summary.
+     */
+    protected void writeMetrics(final String goal) {
+        final BuildMetrics metrics = this.metrics;
+        final File file = new File(metricsDirectory, goal + ".json");
+        try {
+            metrics.save(file, goal);
+        } catch (final IOException e) {
+            getLog().warn("Unable to write build metrics '" + file.getAbsolutePath() + "'.", e);
+        }
+        getLog().info("");
+        getLog().info("Dart " + goal + " metrics:");
+        for (final String line : metrics.summarize()) {
+            getLog().info("  " + line);
+        }
+    }
+
+    /**
+     * Execute the given command line once the {@link #getProcessScheduler() process scheduler} admits another
+     * process.
+     *
+     * @return the exit code of the process
+     */
+    protected int executeCommandLine(final Commandline cl, final StreamConsumer out, final StreamConsumer err)
+        throws CommandLineException {
+        return executeCommandLine(null, null, cl, out, err);
+    }
+
+    /**
+     * Execute the given command line like {@link #executeCommandLine(Commandline, StreamConsumer, StreamConsumer)}
+     * and record its duration, exit code and the size of its output in the {@link #getMetrics() metrics}. The time
+     * spent waiting for the scheduler is not included.
+     *
+     * @param phase the phase the process belongs to, null to not record it
+     * @param name  the name of the process in the metrics, e.g. the relative path of the compiled file
+     * @return the exit code of the process
+     */
+    protected int executeCommandLine(final String phase, final String name, final Commandline cl,
+        final StreamConsumer out, final StreamConsumer err) throws CommandLineException {
+        final ProcessScheduler scheduler = getProcessScheduler();
+        try {
+            scheduler.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommandLineException("Interrupted while waiting to run " + cl, e);
+        }
+        final AtomicLong outputChars = new AtomicLong();
+        final long start = System.currentTimeMillis();
+        Integer exitCode = null;
+        try {
+            exitCode = CommandLineUtils.executeCommandLine(cl, countingConsumer(out, outputChars),
+                countingConsumer(err, outputChars));
+            return exitCode;
+        } finally {
+            scheduler.release();
+            if (phase != null) {
+                metrics.process(phase, name, System.currentTimeMillis() - start, exitCode, outputChars.get());
+            }
+        }
+    }
+
+    private static StreamConsumer countingConsumer(final StreamConsumer consumer, final AtomicLong count) {
+        return new StreamConsumer() {
+            @Override
+            public void consumeLine(final String line) {
+                count.addAndGet(line.length() + 1);
+                consumer.consumeLine(line);
+            }
+        };
+    }
+
+    /**
+     * The import graph of the given package root, kept for the lifetime of this mojo.
+     */
+    DartImportGraph getImportGraph(final File packageRoot) {
+        synchronized (importGraphs) {
+            DartImportGraph importGraph = importGraphs.get(packageRoot);
+            if (importGraph == null) {
+                importGraph = new DartImportGraph(packageRoot);
+                importGraphs.put(packageRoot, importGraph);
+            }
+            return importGraph;
+        }
+    }
+
+    /**
+     * Forget all import graphs, e.g. after pub changed the package locations they resolve package imports by.
+     */
+    void invalidateImportGraphs() {
+        synchronized (importGraphs) {
+            importGraphs.clear();
+        }
+    }
+
+    /**
+     * Forget the directives of a changed dart file.
+     */
+    void invalidateSource(final File dartFile) {
+        synchronized (importGraphs) {
+            for (final DartImportGraph importGraph : importGraphs.values()) {
+                importGraph.invalidate(dartFile);
+            }
+        }
+    }
+
     protected List<File> getCompileSourceRoots() {
         if (compileSourceRoots.isEmpty()) {
             return Collections.singletonList(sourceDirectory);
@@ -90,25 +298,113 @@ public abstract class AbstractDartMojo extends AbstractMojo {
         return compileSourceRoots;
     }
 
-    private String readDartVersion() {
-        File dartVersionFile = new File(dartSdk, "version");
-        if (!dartVersionFile.isFile()) {
-            throw new IllegalArgumentException("Dart version file missing. Configuration error for dartSdk? dartSdk="
-                + dartSdk.getAbsolutePath());
+    protected String readDartVersion() {
+        return getSdkDescriptor().getVersion();
+    }
+
+    /**
+     * The version, executables and supported flags of the configured dart-sdk.
+     */
+    protected SdkDescriptor getSdkDescriptor() {
+        return SdkDescriptor.load(dartSdk, sdkCacheDirectory);
+    }
+
+    protected File getDartExecutable() {
+        return getSdkDescriptor().getExecutable(SdkDescriptor.DART);
+    }
+
+    /**
+     * The command line running the dart vm, optionally in checked mode, e.g. for a script or a test file.
+     */
+    protected Commandline createDartCommandline(final boolean checkedMode) {
+        final Commandline cl = new Commandline();
+        cl.setExecutable(getDartExecutable().getAbsolutePath());
+
+        if (checkedMode) {
+            addCheckedModeArgument(cl, SdkDescriptor.DART, ARGUMENT_CHECKED_MODE);
+        }
+        return cl;
+    }
+
+    /**
+     * Run a single test file, shared by the test and the watch goal. A return code of 255 is a test failure, any
+     * other return code than 0 an error.
+     */
+    protected TestResult runTest(final Commandline baseCommandline, final File dartTestFile,
+        final StreamConsumer output, final StreamConsumer error) throws MojoExecutionException {
+        final Commandline cl = TestMojo.createTestCommandline(baseCommandline, dartTestFile);
+        final String suite = TestMojo.toSuitePath(getBasedir(), dartTestFile);
+        final StringBuilder testOutput = new StringBuilder();
+        final long start = System.currentTimeMillis();
+        try {
+            // logged through the output, so the log of every test file stays one block in parallel runs
+            output.consumeLine("Execute test: " + dartTestFile.getAbsolutePath());
+
+            if (getLog().isDebugEnabled()) {
+                output.consumeLine("Execute test command: " + cl.toString());
+            }
+
+            final StreamConsumer testOutputConsumer = new StreamConsumer() {
+                @Override
+                public void consumeLine(final String line) {
+                    testOutput.append(line).append('\n');
+                    output.consumeLine(line);
+                }
+            };
+            final int returnValue = executeCommandLine("test", suite, cl, testOutputConsumer, error);
+            output.consumeLine("");
+            output.consumeLine("");
+
+            if (getLog().isDebugEnabled()) {
+                output.consumeLine("test return code: " + returnValue);
+            }
+            if (returnValue != 0 && returnValue != 255) {
+                throw new MojoExecutionException("Test fail returned error code " + returnValue);
+            }
+            return new TestResult(suite, dartTestFile.getName(),
+                returnValue == 0 ? TestResult.Status.PASSED : TestResult.Status.FAILED,
+                System.currentTimeMillis() - start, returnValue == 0 ? "" : "Test returned error code " + returnValue,
+                testOutput.toString());
+
+        } catch (final CommandLineException e) {
+            getLog().error("error running tests: ", e);
+            return new TestResult(suite, dartTestFile.getName(),
+                TestResult.Status.ERROR, System.currentTimeMillis() - start, e.getMessage(), testOutput.toString());
+        }
+    }
+
+    /**
+     * Add the given checked mode flag of the given tool, or <code>--enable-asserts</code> if the dart-sdk dropped
+     * checked mode.
+     */
+    protected void addCheckedModeArgument(final Commandline cl, final String tool, final String checkedModeFlag) {
+        if (isSupported(tool, checkedModeFlag)) {
+            cl.createArg().setValue(checkedModeFlag);
+        } else if (isSupported(tool, ARGUMENT_ENABLE_ASSERTS)) {
+            cl.createArg().setValue(ARGUMENT_ENABLE_ASSERTS);
         }
-        try (BufferedReader in = new BufferedReader(new FileReader(dartVersionFile))) {
-            final String dartVersion = in.readLine();
-            if (StringUtils.isEmpty(dartVersion)) {
-                throw new NullPointerException("Unable to read dart version. Configuration error for dartSdk?");
+    }
+
+    /**
+     * Whether the given tool of the dart-sdk accepts the given flag. An unsupported flag is reported once.
+     */
+    protected boolean isSupported(final String tool, final String flag) {
+        if (getSdkDescriptor().supports(tool, flag)) {
+            return true;
+        }
+        synchronized (reportedUnsupportedFlags) {
+            if (reportedUnsupportedFlags.add(tool + " " + flag)) {
+                getLog().warn("Dart-sdk " + getSdkDescriptor().getVersion() + ": " + tool + " does not support "
+                    + flag + ", skipped.");
             }
-            return dartVersion;
-        } catch (IOException e) {
-            throw new IllegalStateException("Unable to read dart version. Configuration error for dartSdk?", e);
         }
+        return false;
     }
 
     protected Set<File> findDartPackageRoots() throws MojoExecutionException {
+        final long start = System.currentTimeMillis();
         final Set<File> dartPackageRoots = new HashSet<>();
+        final PathIndex<File> dartPackageRootIndex = new PathIndex<>();
         for (final File compileSourceRoot : getCompileSourceRoots()) {
             if (!compileSourceRoot.exists()) {
                 throw new MojoExecutionException("Compiler-source-root '" + compileSourceRoot + "'  does not exist.");
@@ -127,16 +423,19 @@ public abstract class AbstractDartMojo extends AbstractMojo {
             if (getLog().isDebugEnabled()) {
                 getLog().debug("Check compile-source-root '" + compileSourceRoot + "' for dart packages.");
             }
+        }
 
-            final List<File> pubSpecs = new ArrayList<>(
-                FileUtils.listFiles(compileSourceRoot, new NameFileFilter("pubspec.yaml"),
-                    DirectoryFileFilter.DIRECTORY));
-            Collections.sort(pubSpecs, new Comparator<File>() {
-                @Override
-                public int compare(File f1, File f2) {
-                    return f1.getAbsolutePath().compareTo(f2.getAbsolutePath());
-                }
-            });
+        final Map<File, List<File>> pubSpecsBySourceRoot;
+        try {
+            pubSpecsBySourceRoot = new PubspecFinder(SystemResources.getAvailableProcessors(), getLog())
+                .find(getCompileSourceRoots());
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Unable to search the compile-source-roots for dart packages.", e);
+        }
+
+        for (final Map.Entry<File, List<File>> sourceRootPubSpecs : pubSpecsBySourceRoot.entrySet()) {
+            final File compileSourceRoot = sourceRootPubSpecs.getKey();
+            final List<File> pubSpecs = sourceRootPubSpecs.getValue();
 
             if (getLog().isDebugEnabled()) {
                 getLog().debug("");
@@ -155,25 +454,50 @@ public abstract class AbstractDartMojo extends AbstractMojo {
 
             for (final File pubSpec : pubSpecs) {
                 final File dartPackageRoot = pubSpec.getParentFile();
-                if (isSubdirectory(dartPackageRoots, dartPackageRoot)) {
+                if (dartPackageRootIndex.isNested(dartPackageRoot)) {
                     getLog().error("Recursive package root found " + dartPackageRoot.getAbsolutePath());
                     throw new MojoExecutionException("Found dart package root which is a subdirectory of another package.");
                 }
                 dartPackageRoots.add(dartPackageRoot);
+                dartPackageRootIndex.put(dartPackageRoot, dartPackageRoot);
             }
         }
+        this.dartPackageRootIndex = dartPackageRootIndex;
         logDartPackageRoots(dartPackageRoots);
+        metrics.phase("discovery", start);
         return dartPackageRoots;
     }
 
-    private boolean isSubdirectory(Set<File> dartPackageRoots, File dartPackageRootToCheck) {
-        final String path = dartPackageRootToCheck.getAbsolutePath();
-        for (final File root : dartPackageRoots) {
-            if (path.startsWith(root.getAbsolutePath())) {
-                return true;
+    /**
+     * The dart package root containing the given file, null if none of the roots found by the last call of
+     * {@link #findDartPackageRoots()} contains it.
+     */
+    protected File findDartPackageRoot(final File file) {
+        final PathIndex<File> index = dartPackageRootIndex;
+        return index == null ? null : index.findOwner(file);
+    }
+
+    /**
+     * The compile source root containing the given file, null if there is none.
+     */
+    protected File findCompileSourceRoot(final File file) {
+        synchronized (this) {
+            if (compileSourceRootIndex == null) {
+                compileSourceRootIndex = new PathIndex<>();
+                for (final File compileSourceRoot : getCompileSourceRoots()) {
+                    compileSourceRootIndex.put(compileSourceRoot, compileSourceRoot);
+                }
             }
         }
-        return false;
+        return compileSourceRootIndex.findOwner(file);
+    }
+
+    /**
+     * The path of the given file relative to the given directory containing it.
+     */
+    protected static String relativize(final File directory, final File file) {
+        return directory.getAbsoluteFile().toPath().normalize()
+            .relativize(file.getAbsoluteFile().toPath().normalize()).toString();
     }
 
     protected String relativePath(final File absolutePath) {
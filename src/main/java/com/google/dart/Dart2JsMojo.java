@@ -15,40 +15,66 @@ package com.google.dart;
  * the License.
  */
 
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableSet;
-import com.google.dart.util.OsUtil;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.dart.util.AssetManifest;
+import com.google.dart.util.BatchCompilerPool;
+import com.google.dart.util.BuildCache;
+import com.google.dart.util.BuildHistory;
+import com.google.dart.util.BuildManifest;
+import com.google.dart.util.CompressionCodec;
+import com.google.dart.util.DartImportGraph;
+import com.google.dart.util.FileUtil;
+import com.google.dart.util.JobLog;
+import com.google.dart.util.MemoryAdmission;
+import com.google.dart.util.Precompressor;
+import com.google.dart.util.ProcessTracker;
+import com.google.dart.util.SdkDescriptor;
+import com.google.dart.util.SourceMaps;
+import com.google.dart.util.SystemResources;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.output.StringBuilderWriter;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.compiler.util.scan.InclusionScanException;
 import org.codehaus.plexus.compiler.util.scan.SourceInclusionScanner;
-import org.codehaus.plexus.compiler.util.scan.StaleSourceScanner;
+import org.codehaus.plexus.compiler.util.scan.SimpleSourceInclusionScanner;
 import org.codehaus.plexus.compiler.util.scan.mapping.SourceMapping;
 import org.codehaus.plexus.compiler.util.scan.mapping.SuffixMapping;
 import org.codehaus.plexus.util.cli.Arg;
 import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
-import org.codehaus.plexus.util.cli.StreamConsumer;
-import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Goal to compile dart files to javascript.
@@ -138,6 +164,22 @@ public class Dart2JsMojo
      * @since 3.0.8
      */
     private final static String ARGUMENT_CATEGORIES = "--categories=";
+
+    private final static String SCHEDULE_LONGEST_FIRST = "longest-first";
+
+    private final static String SCHEDULE_RECENTLY_MODIFIED_FIRST = "recently-modified-first";
+
+    private final static String ARGUMENT_BATCH = "--batch";
+
+    private final static int TERMINATION_TIMEOUT_SECONDS = 10;
+
+    private final static String THREAD_COUNT_AUTO = "auto";
+
+    private final static String DART_JS_SUFFIX = ".dart.js";
+
+    private final static String ASSET_MANIFEST = "asset-manifest.json";
+
+    private final static List<String> PRECOMPRESSED_SUFFIXES = Arrays.asList(".js", ".js.map");
     
     /**
      * Skip the execution of dart2js.
@@ -257,10 +299,21 @@ public class Dart2JsMojo
      * date for testing whether a dart source needs recompilation.
      *
      * @since 1.0
+     * @deprecated since 3.1.0 dart sources are checked against the {@link #manifestFile}, not by modification dates.
      */
+    @Deprecated
     @Parameter(property = "lastModGranularityMs", defaultValue = "0")
     private int staleMillis;
 
+    /**
+     * The build manifest recording the sources, the arguments and the dart-sdk version of every compiled dart
+     * file. A dart file is recompiled if any of them changed.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${project.build.directory}/dart2js-manifest.yaml", property = "dart.manifest")
+    private File manifestFile;
+
     /**
      * Set this to 'true' to skip running dart's packagemanager pub.
      *
@@ -289,12 +342,14 @@ public class Dart2JsMojo
     private String categories;
     
     /**
-     * The number of threads used to span dart2js instances.
+     * The number of threads used to span dart2js instances, or <code>auto</code> to derive it from the cpus and the
+     * memory available to the build, honouring container limits. In auto mode new dart2js instances are also held
+     * back while their expected memory is not available.
      *
      * @since 3.0.0
      */
     @Parameter(defaultValue = "1", property = "dart.thread.count")
-    private int threadCount;
+    private String threadCount;
 
     /**
      * The maximum time in ms all dart files should be compiled.
@@ -304,6 +359,172 @@ public class Dart2JsMojo
     @Parameter(defaultValue = "0", property = "dart.thread.timeout")
     private int timeout;
 
+    /**
+     * Stop at the first dart file which fails to compile: queued compiles are cancelled and running dart2js
+     * processes are killed.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "false", property = "dart.failFast")
+    private boolean failFast;
+
+    /**
+     * The order stale dart files are compiled in. 'longest-first' starts the dart files which took longest on
+     * previous builds first, so no long compile is left over at the end while all other threads are idle.
+     * 'recently-modified-first' starts the dart files with the most recently modified sources first for faster
+     * feedback during development.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = SCHEDULE_LONGEST_FIRST, property = "dart.thread.schedule")
+    private String schedule;
+
+    /**
+     * The durations of all dart2js runs recorded by previous builds, used to schedule the longest compiles first.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${project.build.directory}/dart2js-durations.properties",
+        property = "dart.thread.durations")
+    private File durationsFile;
+
+    /**
+     * The peak memory of all dart2js runs recorded by previous builds, used to estimate the memory of a compile when
+     * the threadCount is <code>auto</code>.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${project.build.directory}/dart2js-memory.properties",
+        property = "dart.thread.memory")
+    private File memoryFile;
+
+    /**
+     * Keep long-lived dart2js processes in batch mode (<code>--batch</code>) instead of starting dart2js for every
+     * dart file, saving the startup of the vm and the compiler. Dart files whose paths contain whitespace are still
+     * compiled by a dart2js process of their own.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "false", property = "dart.workers")
+    private boolean workers;
+
+    /**
+     * The number of compiles after which a batch mode dart2js process is replaced by a fresh one.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "50", property = "dart.workers.maxCompiles")
+    private int workerMaxCompiles;
+
+    /**
+     * The resident memory in MB after which a batch mode dart2js process is replaced by a fresh one.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "2048", property = "dart.workers.maxMemory")
+    private long workerMaxMemory;
+
+    /**
+     * The memory in MB a dart2js run is expected to need if no previous run of the same file was measured.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "1024", property = "dart.thread.memoryEstimate")
+    private long memoryEstimate;
+
+    /**
+     * The maximum number of characters of the output of a single dart2js run kept in memory. Longer outputs are
+     * written to a file in the logDirectory.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "65536", property = "dart.log.bufferSize")
+    private int logBufferSize;
+
+    /**
+     * The directory the complete output of noisy dart2js runs is written to.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${project.build.directory}/dart2js-logs", property = "dart.log.directory")
+    private File logDirectory;
+
+    /**
+     * Set this to 'true' to reuse dart2js outputs from a local build cache shared by all workspaces.
+     * <p/>
+     * The cache key is the content of all transitive sources of a dart file, the dart-sdk version and all
+     * dart2js arguments.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "false", property = "dart.cache")
+    private boolean buildCache;
+
+    /**
+     * The directory of the local build cache.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${user.home}/.m2/dart-build-cache", property = "dart.cache.directory")
+    private File buildCacheDirectory;
+
+    /**
+     * The maximum size of the local build cache in megabytes. The least recently used outputs are evicted first.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "1024", property = "dart.cache.maxSize")
+    private long buildCacheMaxSize;
+
+    /**
+     * The compression codecs writing precompressed siblings of the compiled javascript files and source maps, e.g.
+     * 'gzip' for main.dart.js.gz. Besides 'gzip', the class name of a com.google.dart.util.CompressionCodec added
+     * to the dependencies of the plugin. Unchanged outputs are not compressed again. Nothing is precompressed by
+     * default.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(property = "dart.precompress")
+    private List<String> precompress = new ArrayList<>();
+
+    /**
+     * The content hashes of the precompressed outputs, so unchanged outputs are not compressed again.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${project.build.directory}/dart2js-precompressed.properties",
+        property = "dart.precompress.state")
+    private File precompressStateFile;
+
+    /**
+     * The directory dart2js writes to. Only complete outputs of successful compiles are moved into the output
+     * directory, and only if their content changed.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${project.build.directory}/dart2js-staging", property = "dart.stagingDirectory")
+    private File stagingDirectory;
+
+    /**
+     * Set this to 'true' to also write a copy of every compiled javascript file with the hash of its content in the
+     * name, e.g. main.3f2a9c1b7d4e6f08.dart.js for main.dart.js, and an asset manifest mapping the logical names to
+     * the fingerprinted ones. A file keeps its fingerprinted name as long as its content doesn't change, so it can
+     * be served with an immutable cache policy.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "false", property = "dart.fingerprint")
+    private boolean fingerprint;
+
+    /**
+     * The json asset manifest mapping the compiled javascript files to their fingerprinted copies, relative to the
+     * output directory. Defaults to asset-manifest.json in the output directory.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(property = "dart.fingerprint.manifest")
+    private File assetManifestFile;
+
     public void execute()
         throws MojoExecutionException {
         if (isSkipDart2Js()) {
@@ -311,22 +532,107 @@ public class Dart2JsMojo
             return;
         }
 
-        final Set<File> dartPackageRoots = findDartPackageRoots();
-        processPubDependencies(dartPackageRoots);
-        processDart2Js(dartPackageRoots);
+        try {
+            final Set<File> dartPackageRoots = findDartPackageRoots();
+            processPubDependencies(dartPackageRoots);
+            processDart2Js(dartPackageRoots);
+        } finally {
+            writeMetrics("dart2js");
+        }
     }
 
     private void processDart2Js(final Set<File> dartPackageRoots) throws MojoExecutionException {
+        final long start = System.currentTimeMillis();
+        try {
+            final BuildManifest manifest = loadManifest();
+            checkDart2Js();
+            compileStaleSources(dartPackageRoots, manifest, readDartVersion());
+        } finally {
+            getMetrics().phase("dart2js", start);
+        }
+    }
 
+    /**
+     * Load the manifest of the previous build, or start from scratch if forced to.
+     */
+    BuildManifest loadManifest() throws MojoExecutionException {
+        final BuildManifest manifest = BuildManifest.load(manifestFile);
         if (isForce()) {
             clearOutputDirectory();
+            manifest.clear();
+        }
+        return manifest;
+    }
+
+    /**
+     * Compile all dart files whose output is missing or not up to date according to the manifest, and precompress
+     * the outputs if enabled.
+     */
+    void compileStaleSources(final Set<File> dartPackageRoots, final BuildManifest manifest,
+        final String dartVersion) throws MojoExecutionException {
+        final Precompressor precompressor = precompress.isEmpty() ? null : createPrecompressor();
+        try {
+            compileStaleSources(dartPackageRoots, manifest, dartVersion, precompressor);
+            if (fingerprint) {
+                writeFingerprintedCopies();
+            }
+            if (precompressor != null) {
+                // outputs which were up to date, restored from the build cache or fingerprinted
+                precompressor.submitDirectory(outputDirectory);
+                precompressor.await();
+                getLog().info("Precompressed outputs: " + precompressor.getStatistics());
+            }
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Unable to precompress the compiled dart files.", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while precompressing the compiled dart files.", e);
+        } finally {
+            if (precompressor != null) {
+                try {
+                    precompressor.close();
+                } catch (final IOException e) {
+                    getLog().warn("Unable to write the precompression state '"
+                        + precompressStateFile.getAbsolutePath() + "'.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy every compiled javascript file to a content fingerprinted name and write the asset manifest mapping the
+     * logical names to the fingerprinted ones.
+     */
+    private void writeFingerprintedCopies() throws MojoExecutionException {
+        final AssetManifest assets = new AssetManifest(outputDirectory);
+        final File manifest = getAssetManifestFile();
+        try {
+            if (outputDirectory.isDirectory()) {
+                for (final File output : FileUtils.listFiles(outputDirectory, new String[]{"js"}, true)) {
+                    if (output.getName().endsWith(DART_JS_SUFFIX) && !AssetManifest.isFingerprinted(output.getName())) {
+                        assets.add(output);
+                    }
+                }
+            }
+            assets.save(manifest);
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Unable to write the fingerprinted copies of the compiled dart files.", e);
         }
+        getLog().info("Fingerprinted " + assets.getAssets().size() + " javascript file"
+            + (assets.getAssets().size() == 1 ? "" : "s") + ", asset manifest: " + relativePath(manifest));
+    }
 
-        final Set<File> staleDartSources =
-            computeStaleSources(dartPackageRoots, getSourceInclusionScanner());
+    private File getAssetManifestFile() {
+        return assetManifestFile != null ? assetManifestFile : new File(outputDirectory, ASSET_MANIFEST);
+    }
+
+    private void compileStaleSources(final Set<File> dartPackageRoots, final BuildManifest manifest,
+        final String dartVersion, final Precompressor precompressor) throws MojoExecutionException {
+        final List<CompileJob> staleDartSources =
+            computeStaleSources(dartPackageRoots, getSourceInclusionScanner(), manifest, dartVersion);
 
         if (getLog().isDebugEnabled()) {
-            getLog().debug("staleMillis: " + staleMillis);
+            getLog().debug("manifest: " + manifestFile);
             getLog().debug("basedir: " + getBasedir());
             getLog().debug("outputDirectory: " + outputDirectory);
 
@@ -352,86 +658,108 @@ public class Dart2JsMojo
             getLog().info("Nothing to compile - all dart javascripts are up to date");
         } else {
 
-            checkDart2Js();
-            final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+            final BuildCache cache = isBuildCache()
+                ? new BuildCache(new File(buildCacheDirectory, "dart2js"), buildCacheMaxSize * 1024 * 1024)
+                : null;
+            final BuildHistory durations = BuildHistory.load(durationsFile);
+            final BuildHistory memory = BuildHistory.load(memoryFile);
+            scheduleCompileJobs(staleDartSources, durations);
+            final boolean auto = THREAD_COUNT_AUTO.equalsIgnoreCase(threadCount.trim());
+            final int threads = auto ? computeThreadCount(staleDartSources, memory) : parseThreadCount();
+            if (!auto) {
+                checkThreadCount("dart.thread.count", threads);
+            }
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
 
-            getLog().info("Run " + threadCount + " dart2js's in parallel.");
+            getLog().info("Run " + threads + " dart2js's in parallel.");
             getLog().info("Compile " + staleDartSources.size() + " dart files");
 
-            final List<Future<List<String>>> logging = new ArrayList<>(staleDartSources.size());
-            for (final File dartSourceFile : staleDartSources) {
-                getLog().info("Queue " + dartSourceFile.getAbsolutePath() + " to compile.");
-                logging.add(
-                    executor.submit(new Callable<List<String>>() {
-                        @Override
-                        public List<String> call() throws Exception {
-
-                            getLog().info("compile " + dartSourceFile.getAbsolutePath());
-                            final List<String> messages = new ArrayList<>();
-                            try {
-                                final Commandline cl = createBaseCommandline(messages);
-                                final Arg outPutFileArg = cl.createArg();
-                                final Arg dartFileArg = cl.createArg();
-                                final File dartOutputFile = createOutputFileArgument(messages, outPutFileArg, dartSourceFile);
-                                createDartFileArgument(messages, dartFileArg, dartSourceFile);
-
-                                if (getLog().isDebugEnabled()) {
-                                    messages.add("debug#" + cl.toString());
-                                }
-                                if (!dartOutputFile.getParentFile().exists()) {
-                                    if (getLog().isDebugEnabled()) {
-                                        messages.add("debug#Create directory " + dartOutputFile.getParentFile().getAbsolutePath());
-                                    }
-                                    dartOutputFile.getParentFile().mkdirs();
-                                }
-
-                                if (getLog().isDebugEnabled()) {
-                                    messages.add("debug#" + cl.toString());
-                                }
-
-                                final StringBuilderWriter writer = new StringBuilderWriter();
-                                final StreamConsumer output = new WriterStreamConsumer(writer);
-
-                                final int returnValue = CommandLineUtils.executeCommandLine(cl, output, output);
-
-                                writer.flush();
-                                writer.close();
-                                final StringBuilder stringBuilder = writer.getBuilder();
-                                messages.add("info#" + stringBuilder.toString());
-
-                                if (getLog().isDebugEnabled()) {
-                                    messages.add("debug#dart2js return code: " + returnValue);
-                                }
-                                if (returnValue != 0) {
-                                    throw new MojoExecutionException(null, "Dart2Js returned error code " + returnValue,
-                                        stringBuilder.toString());
-                                }
-
-                                System.out.println();
-                                System.out.println();
-
-                            } catch (final CommandLineException e) {
-                                messages.add("error#dart2js error: " + e.getMessage());
-                                getLog().error("dart2js error", e);
+            final CompileSession session = new CompileSession(manifest, cache, dartVersion,
+                new ProcessTracker(getProcessScheduler(), auto ? new MemoryAdmission(getMemoryBudget()) : null),
+                isWorkers() ? createBatchCompilerPool() : null, auto);
+            final CompletionService<CompileJob> completionService = new ExecutorCompletionService<>(executor);
+            for (final CompileJob job : staleDartSources) {
+                getLog().info("Queue " + job.source.getAbsolutePath() + " to compile.");
+                completionService.submit(new Callable<CompileJob>() {
+                    @Override
+                    public CompileJob call() throws Exception {
+                        getLog().info("compile " + job.source.getAbsolutePath());
+                        job.log = new JobLog(getJobLogFile(job), logBufferSize);
+                        try {
+                            compile(job, session);
+                            if (precompressor != null) {
+                                precompressor.submit(findOutputArtifacts(job.output));
+                            }
+                        } catch (final MojoExecutionException | CommandLineException | IOException e) {
+                            job.log.error("dart2js error: " + e.getMessage());
+                            job.failed = true;
+                        } catch (final InterruptedException e) {
+                            job.log.warn("dart2js for '" + relativePath(job.source) + "' cancelled.");
+                        } finally {
+                            if (job.duration >= 0) {
+                                durations.put(relativePath(job.source), job.duration);
+                            }
+                            if (job.peakMemory > 0) {
+                                memory.put(relativePath(job.source), job.peakMemory);
                             }
-                            getLog().info("done " + dartSourceFile.getAbsolutePath());
-                            return messages;
+                            recordMetrics(job);
+                            job.log.close();
                         }
-                    })
-                );
+                        getLog().info("done " + job.source.getAbsolutePath());
+                        return job;
+                    }
+                });
             }
 
             executor.shutdown();
             try {
-                logResults(logging);
+                final List<CompileJob> failedJobs = logResults(completionService, staleDartSources);
+                if (!failedJobs.isEmpty()) {
+                    final StringBuilder message = new StringBuilder("Unable to compile " + failedJobs.size()
+                        + " dart file" + (failedJobs.size() == 1 ? "" : "s") + ":");
+                    for (final CompileJob failedJob : failedJobs) {
+                        message.append("\n\t").append(relativePath(failedJob.source));
+                    }
+                    if (failFast) {
+                        message.append("\nCancelled all other dart2js runs (dart.failFast).");
+                    }
+                    throw new MojoExecutionException(message.toString());
+                }
                 getLog().info(
                     "Compiling " + staleDartSources.size() + " dart file" + (staleDartSources.size() == 1 ? ""
                         : "s")
                         + " to " + outputDirectory.getAbsolutePath());
+                getLog().info("Published " + session.publishedArtifacts.get() + " changed output file"
+                    + (session.publishedArtifacts.get() == 1 ? "" : "s") + ", " + session.unchangedArtifacts.get()
+                    + " unchanged.");
+                if (cache != null) {
+                    getLog().info("Build cache " + cache.getDirectory() + ": " + cache.getStatistics());
+                }
             } catch (InterruptedException | TimeoutException e) {
                 throw new MojoExecutionException("Unable to compile all dart files within " + timeout + "ms. Perhaps increase it.", e);
             } catch (ExecutionException e) {
                 throw new MojoExecutionException("Unable to compile all dart files.", e);
+            } finally {
+                executor.shutdownNow();
+                session.processes.destroyAll();
+                if (session.batchCompilers != null) {
+                    session.batchCompilers.close();
+                    getLog().info("Batch compilers: " + session.batchCompilers.getStatistics());
+                }
+                awaitTermination(executor);
+                saveManifest(manifest);
+                try {
+                    durations.save();
+                } catch (final IOException e) {
+                    getLog().warn("Unable to write dart2js durations '" + durationsFile.getAbsolutePath() + "'.", e);
+                }
+                if (auto) {
+                    try {
+                        memory.save();
+                    } catch (final IOException e) {
+                        getLog().warn("Unable to write dart2js memory '" + memoryFile.getAbsolutePath() + "'.", e);
+                    }
+                }
             }
         }
 
@@ -439,62 +767,394 @@ public class Dart2JsMojo
         System.out.println();
     }
 
-    private void logResults(List<Future<List<String>>> logging) throws InterruptedException, ExecutionException, TimeoutException {
-        for (final Future<List<String>> future : logging) {
-            List<String> messages;
-            if (timeout > 0) {
-                messages = future.get(timeout, TimeUnit.MILLISECONDS);
+    /**
+     * Wait for cancelled compile jobs to clean up, so they don't touch the manifest while it is saved.
+     */
+    private void awaitTermination(final ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                getLog().warn("Some dart2js runs did not stop within " + TERMINATION_TIMEOUT_SECONDS + "s.");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Compile a single dart file, or restore it from the build cache.
+     */
+    private void compile(final CompileJob job, final CompileSession session)
+        throws MojoExecutionException, CommandLineException, IOException, InterruptedException {
+        final BuildManifest manifest = session.manifest;
+        final BuildCache cache = session.cache;
+        final String dartVersion = session.dartVersion;
+        final JobLog log = job.log;
+        final File dartSourceFile = job.source;
+        final String manifestOutput = relativePath(job.output);
+        manifest.remove(manifestOutput);
+
+        final Commandline cl = createBaseCommandline(log);
+        final String cacheKey = cache == null ? null : computeCacheKey(job, dartVersion);
+        final Arg outPutFileArg = cl.createArg();
+        final Arg dartFileArg = cl.createArg();
+        final File dartOutputFile = createOutputFileArgument(log, outPutFileArg, dartSourceFile);
+        final File stagedOutputFile = getStagedFile(dartOutputFile);
+        createDartFileArgument(log, dartFileArg, dartSourceFile);
+
+        // dart2js writes into the staging directory, leftovers of cancelled runs are never published
+        for (final File artifact : findOutputArtifacts(stagedOutputFile)) {
+            Files.deleteIfExists(artifact.toPath());
+        }
+
+        boolean restored = false;
+        if (cache != null) {
+            try {
+                restored = cache.restore(cacheKey, stagedOutputFile.getParentFile());
+            } catch (final IOException e) {
+                log.warn("Unable to restore '" + relativePath(dartOutputFile) + "' from build cache: "
+                    + e.getMessage());
+            }
+        }
+        if (restored) {
+            log.info("Restored '" + relativePath(dartOutputFile) + "' from build cache.");
+            job.restored = true;
+            publishOutputArtifacts(log, stagedOutputFile, dartOutputFile, session, true);
+            manifest.record(manifestOutput, dartVersion, job.arguments, job.sourceHashes);
+            return;
+        }
+
+        if (!stagedOutputFile.getParentFile().exists()) {
+            if (getLog().isDebugEnabled()) {
+                log.debug("Create directory " + stagedOutputFile.getParentFile().getAbsolutePath());
+            }
+            stagedOutputFile.getParentFile().mkdirs();
+        }
+
+        if (getLog().isDebugEnabled()) {
+            log.debug(cl.toString());
+        }
+
+        final long start = System.currentTimeMillis();
+        final List<String> arguments = Arrays.asList(cl.getArguments());
+        final int returnValue;
+        if (session.batchCompilers != null && !containsWhitespace(arguments)) {
+            returnValue = session.batchCompilers.compile(arguments, log, log);
+        } else {
+            final ProcessTracker.Execution execution =
+                session.processes.execute(cl, log, log, session.measureMemory ? job.estimatedMemory : 0);
+            returnValue = execution.getExitCode();
+            job.peakMemory = execution.getPeakMemoryBytes();
+        }
+        job.duration = System.currentTimeMillis() - start;
+        job.exitCode = returnValue;
+
+        if (getLog().isDebugEnabled()) {
+            log.debug("dart2js return code: " + returnValue);
+        }
+        if (returnValue != 0) {
+            throw new MojoExecutionException("Dart2Js returned error code " + returnValue);
+        }
+        if (cache != null) {
+            try {
+                cache.store(cacheKey, findOutputArtifacts(stagedOutputFile));
+            } catch (final IOException e) {
+                log.warn("Unable to store '" + relativePath(dartOutputFile) + "' in build cache: " + e.getMessage());
+            }
+        }
+        publishOutputArtifacts(log, stagedOutputFile, dartOutputFile, session, false);
+        manifest.record(manifestOutput, dartVersion, job.arguments, job.sourceHashes);
+    }
+
+    /**
+     * Record a compile job in the metrics: restored from the build cache, or run with the size of its published
+     * artifacts.
+     */
+    private void recordMetrics(final CompileJob job) {
+        if (job.restored) {
+            getMetrics().skipped("dart2js", relativePath(job.source), "restored from build cache");
+            return;
+        }
+        long outputBytes = 0;
+        if (job.exitCode != null && job.exitCode == 0) {
+            for (final File artifact : findOutputArtifacts(job.output)) {
+                outputBytes += artifact.length();
+            }
+        }
+        getMetrics().process("dart2js", relativePath(job.source), Math.max(0, job.duration), job.exitCode,
+            outputBytes);
+    }
+
+    /**
+     * The file dart2js writes the given output file to before it is published.
+     */
+    private File getStagedFile(final File dartOutputFile) {
+        return new File(stagingDirectory, relativize(outputDirectory, dartOutputFile));
+    }
+
+    /**
+     * Move the artifacts of a compile from the staging directory into the output directory. Artifacts equal to the
+     * published ones are dropped, so the published files keep their timestamps. Artifacts no longer generated, e.g.
+     * parts of removed deferred libraries, are deleted, but not the precompressed siblings of published ones.
+     *
+     * @param restored whether the staged artifacts were restored from the build cache
+     */
+    private void publishOutputArtifacts(final JobLog log, final File stagedOutputFile, final File dartOutputFile,
+        final CompileSession session, final boolean restored) throws IOException {
+        final File targetDirectory = dartOutputFile.getParentFile();
+        if (!targetDirectory.isDirectory() && !targetDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory '" + targetDirectory.getAbsolutePath() + "'.");
+        }
+        prepareForPublishing(stagedOutputFile, targetDirectory, restored);
+        final Set<String> artifacts = new HashSet<>();
+        for (final File staged : findOutputArtifacts(stagedOutputFile)) {
+            final File target = new File(targetDirectory, staged.getName());
+            artifacts.add(staged.getName());
+            if (target.isFile() && FileUtils.contentEquals(staged, target)) {
+                Files.delete(staged.toPath());
+                session.unchangedArtifacts.incrementAndGet();
+                continue;
+            }
+            FileUtil.replaceAtomically(staged, target);
+            session.publishedArtifacts.incrementAndGet();
+            if (getLog().isDebugEnabled()) {
+                log.debug("Published '" + relativePath(target) + "'.");
+            }
+        }
+        for (final File target : findOutputArtifacts(dartOutputFile)) {
+            final String name = target.getName();
+            final int extension = name.lastIndexOf('.');
+            if (!artifacts.contains(name) && (extension < 0 || !artifacts.contains(name.substring(0, extension)))) {
+                Files.deleteIfExists(target.toPath());
+            }
+        }
+    }
+
+    /**
+     * Source maps get the paths of their sources relative to the output directory instead of the staging directory.
+     * Artifacts restored from the build cache may be links to the cache entry and are replaced by copies, so a later
+     * change of a published file never changes the cache.
+     */
+    private void prepareForPublishing(final File stagedOutputFile, final File targetDirectory, final boolean restored)
+        throws IOException {
+        for (final File staged : findOutputArtifacts(stagedOutputFile)) {
+            final File copy = new File(staged.getParentFile(), "." + staged.getName() + ".tmp");
+            if (staged.getName().endsWith(SourceMaps.SUFFIX)) {
+                final String sourceMap = new String(Files.readAllBytes(staged.toPath()), StandardCharsets.UTF_8);
+                Files.write(copy.toPath(), SourceMaps.relocate(sourceMap, staged.getParentFile(), targetDirectory)
+                    .getBytes(StandardCharsets.UTF_8));
+            } else if (restored) {
+                Files.copy(staged.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
             } else {
-                messages = future.get();
+                continue;
             }
-            for (final String logMessage : messages) {
-                final String[] m = logMessage.split("#");
-                if (m.length > 1) {
-                    final String level = m[0];
-                    final String message = m[1];
-                    switch (level) {
-                        case "debug":
-                            getLog().debug(message);
-                            break;
-                        case "info":
-                            getLog().info(message);
-                            break;
-                        case "warn":
-                            getLog().warn(message);
-                            break;
-                        case "error":
-                            getLog().error(message);
-                            break;
-                    }
-                } else {
-                    // defaults to info
-                    getLog().info(logMessage);
+            Files.move(copy.toPath(), staged.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The batch mode takes the arguments of a compile space separated on a single line.
+     */
+    private static boolean containsWhitespace(final List<String> arguments) {
+        for (final String argument : arguments) {
+            if (CharMatcher.WHITESPACE.matchesAnyOf(argument)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Precompressor createPrecompressor() throws MojoExecutionException {
+        final List<CompressionCodec> codecs = new ArrayList<>();
+        try {
+            for (final String codec : precompress) {
+                codecs.add(Precompressor.createCodec(codec));
+            }
+        } catch (final IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        return new Precompressor(outputDirectory, codecs, PRECOMPRESSED_SUFFIXES, precompressStateFile,
+            SystemResources.getAvailableProcessors());
+    }
+
+    /**
+     * Whether to compile on batch compilers, only if enabled and supported by the dart2js of the sdk.
+     */
+    private boolean isWorkers() {
+        return workers && isSupported(SdkDescriptor.DART2JS, ARGUMENT_BATCH);
+    }
+
+    private BatchCompilerPool createBatchCompilerPool() {
+        final Commandline cl = new Commandline();
+        cl.setExecutable(getDart2JsExecutable().getAbsolutePath());
+        cl.createArg().setValue(ARGUMENT_BATCH);
+        return new BatchCompilerPool(cl, workerMaxCompiles, workerMaxMemory * 1024 * 1024, getProcessScheduler());
+    }
+
+    /**
+     * The file the log of a compile job spills to if it exceeds {@link #logBufferSize}.
+     */
+    private File getJobLogFile(final CompileJob job) {
+        return new File(logDirectory, relativePath(job.source).replace('/', '_').replace('\\', '_') + ".log");
+    }
+
+    private int parseThreadCount() throws MojoExecutionException {
+        try {
+            return Math.max(1, Integer.parseInt(threadCount.trim()));
+        } catch (final NumberFormatException e) {
+            throw new MojoExecutionException(
+                "Invalid threadCount '" + threadCount + "', expected a number or '" + THREAD_COUNT_AUTO + "'.");
+        }
+    }
+
+    /**
+     * Estimate the memory of every compile job and derive the number of parallel dart2js runs from the cpus and the
+     * memory available.
+     */
+    private int computeThreadCount(final List<CompileJob> jobs, final BuildHistory memory) {
+        final long defaultEstimate = memory.isEmpty() ? memoryEstimate * 1024 * 1024 : memory.getAverage();
+        long largestEstimate = 0;
+        for (final CompileJob job : jobs) {
+            final Long peak = memory.get(relativePath(job.source));
+            job.estimatedMemory = peak != null ? peak : defaultEstimate;
+            largestEstimate = Math.max(largestEstimate, job.estimatedMemory);
+        }
+        final int processors = SystemResources.getAvailableProcessors();
+        final long budget = getMemoryBudget();
+        int threads = processors;
+        if (budget > 0 && largestEstimate > 0) {
+            threads = (int) Math.min(threads, Math.max(1, budget / largestEstimate));
+        }
+        threads = Math.max(1, Math.min(threads, jobs.size()));
+        if (getLog().isDebugEnabled()) {
+            getLog().debug("threadCount auto: " + processors + " cpus, memory budget " + budget / (1024 * 1024)
+                + "MB, largest estimate " + largestEstimate / (1024 * 1024) + "MB: " + threads + " threads");
+        }
+        return threads;
+    }
+
+    /**
+     * The memory available to dart2js runs: the memory limit minus what this jvm may still claim.
+     */
+    private long getMemoryBudget() {
+        final long limit = SystemResources.getMemoryLimit();
+        if (limit == SystemResources.UNKNOWN) {
+            return SystemResources.UNKNOWN;
+        }
+        return Math.max(0, limit - Runtime.getRuntime().maxMemory());
+    }
+
+    /**
+     * Order the compile jobs according to {@link #schedule}. Without a recorded duration the duration of a compile
+     * is estimated from the size of all its sources.
+     */
+    private void scheduleCompileJobs(final List<CompileJob> jobs, final BuildHistory durations) {
+        if (SCHEDULE_RECENTLY_MODIFIED_FIRST.equals(schedule)) {
+            Collections.sort(jobs, new Comparator<CompileJob>() {
+                @Override
+                public int compare(final CompileJob j1, final CompileJob j2) {
+                    return Long.compare(j2.lastModified, j1.lastModified);
                 }
+            });
+            return;
+        }
+        if (!SCHEDULE_LONGEST_FIRST.equals(schedule)) {
+            getLog().warn("Unknown schedule '" + schedule + "', using '" + SCHEDULE_LONGEST_FIRST + "'.");
+        }
+
+        long knownDurations = 0;
+        long knownSizes = 0;
+        for (final CompileJob job : jobs) {
+            final Long duration = durations.get(relativePath(job.source));
+            if (duration != null) {
+                knownDurations += duration;
+                knownSizes += job.sourceSize;
+            }
+        }
+        final double millisPerByte = knownSizes > 0 ? (double) knownDurations / knownSizes : 0;
+        for (final CompileJob job : jobs) {
+            final Long duration = durations.get(relativePath(job.source));
+            if (duration != null) {
+                job.estimatedDuration = duration;
+            } else if (millisPerByte > 0) {
+                job.estimatedDuration = (long) (job.sourceSize * millisPerByte);
+            } else {
+                job.estimatedDuration = job.sourceSize;
             }
         }
+        Collections.sort(jobs, new Comparator<CompileJob>() {
+            @Override
+            public int compare(final CompileJob j1, final CompileJob j2) {
+                return Long.compare(j2.estimatedDuration, j1.estimatedDuration);
+            }
+        });
     }
 
-    private Commandline createBaseCommandline(List<String> messages) throws MojoExecutionException {
-        final String dart2jsPath = getDart2JsExecutable().getAbsolutePath();
+    private void saveManifest(final BuildManifest manifest) {
+        try {
+            manifest.save();
+        } catch (final IOException e) {
+            getLog().warn("Unable to write build manifest '" + manifestFile.getAbsolutePath() + "'.", e);
+        }
+    }
 
+    /**
+     * Replay the logs of all jobs in the order the jobs finish. The timeout applies to all jobs together. With
+     * failFast, stop at the first failed job.
+     *
+     * @return all jobs which failed
+     */
+    private List<CompileJob> logResults(final CompletionService<CompileJob> completionService,
+        final List<CompileJob> jobs) throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        final List<CompileJob> failedJobs = new ArrayList<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            final Future<CompileJob> future;
+            if (timeout > 0) {
+                future = completionService.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    throw new TimeoutException();
+                }
+            } else {
+                future = completionService.take();
+            }
+            final CompileJob job = future.get();
+            job.log.replay(getLog());
+            if (job.failed) {
+                failedJobs.add(job);
+                if (failFast) {
+                    break;
+                }
+            }
+        }
+        return failedJobs;
+    }
+
+    private Commandline createBaseCommandline(final JobLog log) throws MojoExecutionException {
+        final Commandline cl = createBaseCommandline();
         if (getLog().isDebugEnabled()) {
-            messages.add("debug#Using dart2js '" + dart2jsPath + "'.");
-            messages.add("debug#Source directories: " + getCompileSourceRoots().toString().replace(',', '\n'));
-            messages.add("debug#Output directory: " + getOutputDirectory());
+            log.debug("Using dart2js '" + getDart2JsExecutable().getAbsolutePath() + "'.");
+            log.debug("Source directories: " + getCompileSourceRoots().toString().replace(',', '\n'));
+            log.debug("Output directory: " + getOutputDirectory());
+            log.debug("Base dart2js command: " + cl.toString());
         }
+        return cl;
+    }
+
+    private Commandline createBaseCommandline() throws MojoExecutionException {
+        final String dart2jsPath = getDart2JsExecutable().getAbsolutePath();
 
         final Commandline cl = new Commandline();
         cl.setExecutable(dart2jsPath);
 
         if (isCheckedMode()) {
-            cl.createArg().setValue(ARGUMENT_CHECKED_MODE);
+            addCheckedModeArgument(cl, SdkDescriptor.DART2JS, ARGUMENT_CHECKED_MODE);
         }
 
         if (isVerbose()) {
             cl.createArg().setValue(ARGUMENT_VERBOSE);
         }
 
-        if (isAnalyseAll()) {
+        if (isAnalyseAll() && isSupported(SdkDescriptor.DART2JS, ARGUMENT_ANALYSE_ALL)) {
             cl.createArg().setValue(ARGUMENT_ANALYSE_ALL);
         }
 
@@ -502,15 +1162,15 @@ public class Dart2JsMojo
             cl.createArg().setValue(ARGUMENT_MINIFY);
         }
 
-        if (isSuppressWarnings()) {
+        if (isSuppressWarnings() && isSupported(SdkDescriptor.DART2JS, ARGUMENT_SUPPRESS_WARNINGS)) {
             cl.createArg().setValue(ARGUMENT_SUPPRESS_WARNINGS);
         }
 
-        if (isSuppressHints()) {
+        if (isSuppressHints() && isSupported(SdkDescriptor.DART2JS, ARGUMENT_SUPPRESS_HINTS)) {
             cl.createArg().setValue(ARGUMENT_SUPPRESS_HINTS);
         }
 
-        if (isDiagnosticColors()) {
+        if (isDiagnosticColors() && isSupported(SdkDescriptor.DART2JS, ARGUMENT_DIAGNOSTIC_COLORS)) {
             cl.createArg().setValue(ARGUMENT_DIAGNOSTIC_COLORS);
         }
 
@@ -522,17 +1182,47 @@ public class Dart2JsMojo
             cl.createArg().setValue(ARGUMENT_GLOBAL_JS_NAME + globalJsName);
         }
 
-        if (isCategories()) {
+        if (isCategories() && isSupported(SdkDescriptor.DART2JS, ARGUMENT_CATEGORIES)) {
             cl.createArg().setValue(ARGUMENT_CATEGORIES + categories);
         }
-        
-        if (getLog().isDebugEnabled()) {
-            messages.add("debug#Base dart2js command: " + cl.toString());
-        }
 
         return cl;
     }
 
+    /**
+     * The build cache key of a dart file: the dart-sdk version, the dart2js arguments and the path and content
+     * hash of every transitive source of the dart file.
+     */
+    private String computeCacheKey(final CompileJob job, final String dartVersion) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(dartVersion, Charsets.UTF_8).putByte((byte) 0);
+        for (final String argument : job.arguments) {
+            hasher.putString(argument, Charsets.UTF_8).putByte((byte) 0);
+        }
+        for (final Map.Entry<String, String> sourceHash : job.sourceHashes.entrySet()) {
+            hasher.putString(sourceHash.getKey(), Charsets.UTF_8).putByte((byte) 0);
+            hasher.putString(sourceHash.getValue(), Charsets.UTF_8).putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * All files dart2js generated for the given output file: the javascript, its source map, the dependency file
+     * and the parts of deferred libraries.
+     */
+    private List<File> findOutputArtifacts(final File dartOutputFile) {
+        final String name = dartOutputFile.getName();
+        final File[] artifacts = dartOutputFile.getParentFile().listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                final String fileName = file.getName();
+                return file.isFile()
+                    && (fileName.equals(name) || fileName.startsWith(name + ".") || fileName.startsWith(name + "_"));
+            }
+        });
+        return artifacts == null ? Collections.<File>emptyList() : Arrays.asList(artifacts);
+    }
+
     protected void checkDart2Js() {
         checkDartSdk();
         if (!getDart2JsExecutable().canExecute()) {
@@ -542,7 +1232,7 @@ public class Dart2JsMojo
     }
 
     protected File getDart2JsExecutable() {
-        return new File(getDartSdk(), "bin/dart2js" + (OsUtil.isWindows() ? ".bat" : ""));
+        return getSdkDescriptor().getExecutable(SdkDescriptor.DART2JS);
     }
 
     private void clearOutputDirectory() throws MojoExecutionException {
@@ -567,61 +1257,79 @@ public class Dart2JsMojo
         }
     }
 
-    private void createDartFileArgument(List<String> messages, final Arg compilerArguments, final File dartSourceFile) {
+    private void createDartFileArgument(final JobLog log, final Arg compilerArguments, final File dartSourceFile) {
         final String dartSourceFileAbsolutePath = dartSourceFile.getAbsolutePath();
         compilerArguments.setValue(dartSourceFileAbsolutePath);
-        messages.add("info#dart2js for '" + relativePath(dartSourceFile) + "'");
+        log.info("dart2js for '" + relativePath(dartSourceFile) + "'");
     }
 
-    private File createOutputFileArgument(List<String> messages, final Arg outPutFileArg, final File dartSourceFile)
+    private File createOutputFileArgument(final JobLog log, final Arg outPutFileArg, final File dartSourceFile)
         throws MojoExecutionException {
         final String dartSourceFileAbsolutePath = dartSourceFile.getAbsolutePath();
 
-        String dartOutputFileRelativeToBasedir = null;
-        for (final File compileSourceRoot : getCompileSourceRoots()) {
-            final String compileSourceRootAsString = compileSourceRoot.getAbsolutePath();
-            if (dartSourceFileAbsolutePath.startsWith(compileSourceRootAsString)) {
-                dartOutputFileRelativeToBasedir = dartSourceFileAbsolutePath.replace(compileSourceRootAsString, "");
-                dartOutputFileRelativeToBasedir += ".js";
-                break;
+        final File compileSourceRoot = findCompileSourceRoot(dartSourceFile);
+        if (compileSourceRoot == null) {
+            log.error("Unable to find compilerSourceRoot for dart file '" + dartSourceFileAbsolutePath + "'");
+            log.error("compilerSourceRoots are:");
+            for (final File root : getCompileSourceRoots()) {
+                log.error(root.getAbsolutePath());
             }
 
-        }
-
-        if (dartOutputFileRelativeToBasedir == null) {
-            messages.add("error#Unable to find compilerSourceRoot for dart file '" + dartSourceFileAbsolutePath + "'");
-            messages.add("error#compilerSourceRoots are:");
-            for (final File compileSourceRoot : getCompileSourceRoots()) {
-                getLog().error(compileSourceRoot.getAbsolutePath());
-            }
-
-            System.out.println("");
-            System.out.println("");
-
             throw new MojoExecutionException("There is something wrong. ");
         }
 
-        final String dartOutputFile = outputDirectory.getAbsolutePath() + dartOutputFileRelativeToBasedir;
+        final String dartOutputFile =
+            new File(outputDirectory.getAbsoluteFile(), relativize(compileSourceRoot, dartSourceFile) + ".js")
+                .getAbsolutePath();
 
         if (getLog().isDebugEnabled()) {
-            messages.add("debug#dart2js compiles dart-file '" + dartSourceFileAbsolutePath + "' to outputdirectory '"
+            log.debug("dart2js compiles dart-file '" + dartSourceFileAbsolutePath + "' to outputdirectory '"
                 + dartOutputFile + "'");
         }
-        outPutFileArg.setValue(ARGUMENT_OUTPUT_FILE + dartOutputFile);
+        outPutFileArg.setValue(ARGUMENT_OUTPUT_FILE + getStagedFile(new File(dartOutputFile)).getAbsolutePath());
         return new File(dartOutputFile);
     }
 
-    private Set<File> computeStaleSources(final Set<File> packageRoots, final SourceInclusionScanner scanner)
-        throws MojoExecutionException {
+    private List<CompileJob> computeStaleSources(final Set<File> packageRoots, final SourceInclusionScanner scanner,
+        final BuildManifest manifest, final String dartVersion) throws MojoExecutionException {
         final SourceMapping mapping = new SuffixMapping("dart", "dart.js");
         scanner.addSourceMapping(mapping);
 
-        final Set<File> staleSources = new HashSet<>();
+        final List<String> baseArguments = new ArrayList<>();
+        for (final String argument : createBaseCommandline().getArguments()) {
+            baseArguments.add(argument.replace(getBasedir().getAbsolutePath() + File.separator, ""));
+        }
+
+        final List<CompileJob> staleSources = new ArrayList<>();
         for (final File packageRoot : packageRoots) {
             try {
                 final File packageOutputDirectory = getPackageOutputDirectory(packageRoot);
-                staleSources.addAll(scanner.getIncludedSources(packageRoot, packageOutputDirectory));
-            } catch (final InclusionScanException e) {
+                final DartImportGraph importGraph = getImportGraph(packageRoot);
+                for (final File dartSource : scanner.getIncludedSources(packageRoot, packageOutputDirectory)) {
+                    final String relativeSource = dartSource.getAbsolutePath()
+                        .substring(packageRoot.getAbsolutePath().length() + 1);
+                    for (final File target : mapping.getTargetFiles(packageOutputDirectory, relativeSource)) {
+                        final CompileJob job = new CompileJob(dartSource, target);
+                        job.arguments.addAll(baseArguments);
+                        job.arguments.add(ARGUMENT_OUTPUT_FILE + relativePath(target));
+                        job.arguments.add(relativePath(dartSource));
+                        for (final File source : importGraph.getTransitiveSources(dartSource)) {
+                            job.sourceHashes.put(relativePath(source), manifest.getFileHashes().hash(source));
+                            job.sourceSize += source.length();
+                            job.lastModified = Math.max(job.lastModified, source.lastModified());
+                        }
+                        if (!target.exists() || !manifest.isUpToDate(relativePath(target), dartVersion,
+                            job.arguments, job.sourceHashes)) {
+                            if (getLog().isDebugEnabled()) {
+                                getLog().debug("'" + relativePath(dartSource) + "' is stale.");
+                            }
+                            staleSources.add(job);
+                            break;
+                        }
+                        getMetrics().skipped("dart2js", relativePath(dartSource), "up to date");
+                    }
+                }
+            } catch (final InclusionScanException | IOException e) {
                 throw new MojoExecutionException(
                     "Error scanning source root: \'" + relativePath(packageRoot)
                         + "\' for stale files to recompile.", e);
@@ -632,19 +1340,109 @@ public class Dart2JsMojo
     }
 
     private File getPackageOutputDirectory(final File packageRoot) {
-        String packageRootOffset = packageRoot.getAbsolutePath();
-        for (final File compileSourceRoot : getCompileSourceRoots()) {
-            final String compileSourceRootAsString = compileSourceRoot.getAbsolutePath();
-            if (packageRootOffset.startsWith(compileSourceRootAsString)) {
-                packageRootOffset = packageRootOffset.replace(compileSourceRootAsString + "/", "");
-                break;
-            }
-        }
+        final File compileSourceRoot = findCompileSourceRoot(packageRoot);
+        final String packageRootOffset = compileSourceRoot == null ? packageRoot.getAbsolutePath()
+            : relativize(compileSourceRoot, packageRoot);
         return new File(getOutputDirectory(), packageRootOffset);
     }
 
+    /**
+     * Everything the compile jobs of one build share.
+     */
+    private static class CompileSession {
+
+        private final BuildManifest manifest;
+
+        private final BuildCache cache;
+
+        private final String dartVersion;
+
+        private final ProcessTracker processes;
+
+        private final BatchCompilerPool batchCompilers;
+
+        private final boolean measureMemory;
+
+        private final AtomicInteger publishedArtifacts = new AtomicInteger();
+
+        private final AtomicInteger unchangedArtifacts = new AtomicInteger();
+
+        private CompileSession(final BuildManifest manifest, final BuildCache cache, final String dartVersion,
+            final ProcessTracker processes, final BatchCompilerPool batchCompilers, final boolean measureMemory) {
+            this.manifest = manifest;
+            this.cache = cache;
+            this.dartVersion = dartVersion;
+            this.processes = processes;
+            this.batchCompilers = batchCompilers;
+            this.measureMemory = measureMemory;
+        }
+    }
+
+    /**
+     * A dart file to compile together with everything deciding whether its output is up to date.
+     */
+    private static class CompileJob {
+
+        private final File source;
+
+        private final File output;
+
+        /**
+         * The dart2js arguments relative to the basedir.
+         */
+        private final List<String> arguments = new ArrayList<>();
+
+        /**
+         * The content hashes of all transitive sources by their path relative to the basedir.
+         */
+        private final SortedMap<String, String> sourceHashes = new TreeMap<>();
+
+        /**
+         * The total size of all transitive sources in bytes.
+         */
+        private long sourceSize;
+
+        /**
+         * The most recent modification of any transitive source.
+         */
+        private long lastModified;
+
+        private long estimatedDuration;
+
+        /**
+         * The expected peak memory in bytes.
+         */
+        private long estimatedMemory;
+
+        /**
+         * The measured duration of the dart2js run, -1 if dart2js did not run.
+         */
+        private long duration = -1;
+
+        /**
+         * The measured peak memory of the dart2js run, -1 if unknown.
+         */
+        private long peakMemory = -1;
+
+        /**
+         * The exit code of the dart2js run, null if dart2js did not run or was cancelled.
+         */
+        private Integer exitCode;
+
+        private boolean restored;
+
+        private JobLog log;
+
+        private volatile boolean failed;
+
+        private CompileJob(final File source, final File output) {
+            this.source = source;
+            this.output = output;
+        }
+    }
+
     private SourceInclusionScanner getSourceInclusionScanner() {
-        return new StaleSourceScanner(getStaleMillis(), getIncludes(), getExcludes());
+        return new SimpleSourceInclusionScanner(getIncludes(), getExcludes());
     }
 
     public Set<String> getIncludes() {
@@ -678,10 +1476,6 @@ public class Dart2JsMojo
         return checkedMode;
     }
 
-    protected int getStaleMillis() {
-        return staleMillis;
-    }
-
     protected boolean isVerbose() {
         return verbose;
     }
@@ -706,6 +1500,10 @@ public class Dart2JsMojo
         return diagnosticColors;
     }
 
+    protected boolean isBuildCache() {
+        return buildCache;
+    }
+
     protected boolean isForce() {
         return force;
     }
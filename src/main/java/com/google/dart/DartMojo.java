@@ -1,19 +1,22 @@
 package com.google.dart;
 
-import com.google.dart.util.OsUtil;
+import com.google.dart.util.SdkDescriptor;
+import com.google.dart.util.SnapshotCache;
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.StreamConsumer;
 import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -25,13 +28,6 @@ import java.util.Set;
 @Mojo(name = "dart", threadSafe = true)
 public class DartMojo extends PubMojo {
 
-    /**
-     * Insert runtime type checks and enable assertions (checked mode).
-     *
-     * @since 2.0
-     */
-    private final static String ARGUMENT_CHECKED_MODE = "--checked";
-
     /**
      * Where to find packages, that is, "package:..." imports.
      *
@@ -63,6 +59,15 @@ public class DartMojo extends PubMojo {
      */
     private final static String ARGUMENT_USE_SCRIPT_SNAPSHOT = "--use_script_snapshot=";
 
+    /**
+     * Writes a snapshot of the given kind to the file given by {@link #ARGUMENT_SNAPSHOT} when the script exits.
+     */
+    private final static String ARGUMENT_SNAPSHOT_KIND = "--snapshot-kind=";
+
+    private final static String ARGUMENT_SNAPSHOT = "--snapshot=";
+
+    private final static String SNAPSHOT_KIND_APP_JIT = "app-jit";
+
     /**
      * Skip the execution of dart2js.
      *
@@ -123,6 +128,24 @@ public class DartMojo extends PubMojo {
     @Parameter(property = "dart.useScriptSnapshot")
     private String useScriptSnapshot;
 
+    /**
+     * Set this to 'true' to run the script from an app-jit snapshot: a run of the script writes the snapshot, and
+     * later runs start from it until the script, one of its imports, the package configuration or the dart-sdk
+     * changes. Ignored when debugging or running a {@link #useScriptSnapshot}.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "false", property = "dart.snapshot")
+    private boolean snapshot;
+
+    /**
+     * The directory the app-jit snapshots of the scripts are kept in.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${project.build.directory}/dart-snapshots", property = "dart.snapshot.directory")
+    private File snapshotDirectory;
+
     /**
      * Set this to 'true' to skip running dart's packagemanager pub.
      *
@@ -145,9 +168,13 @@ public class DartMojo extends PubMojo {
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
 
-        final Set<File> dartPackageRoots = findDartPackageRoots();
-        processPubDependencies(dartPackageRoots);
-        executeDart();
+        try {
+            final Set<File> dartPackageRoots = findDartPackageRoots();
+            processPubDependencies(dartPackageRoots);
+            executeDart();
+        } finally {
+            writeMetrics("dart");
+        }
     }
 
     private void executeDart() throws MojoExecutionException {
@@ -164,7 +191,29 @@ public class DartMojo extends PubMojo {
             throw new IllegalArgumentException("Script must be a readable file. script=" + script.getAbsolutePath());
         }
 
-        cl.createArg(true).setValue(script.getAbsolutePath());
+        final List<String> vmArguments = Arrays.asList(cl.getArguments());
+        final SnapshotCache snapshots = isSnapshot() ? new SnapshotCache(snapshotDirectory) : null;
+        final String snapshotName = relativePath(script).replace('/', '_').replace('\\', '_');
+        String snapshotKey = null;
+        File cachedSnapshot = null;
+        File trainingSnapshot = null;
+        if (snapshots != null) {
+            try {
+                snapshotKey = snapshots.computeKey(script, getScriptPackageRoot(), readDartVersion(), vmArguments);
+                cachedSnapshot = snapshots.get(snapshotName, snapshotKey);
+                if (cachedSnapshot == null) {
+                    trainingSnapshot = snapshots.createTemporaryFile(snapshotName);
+                }
+            } catch (final IOException e) {
+                getLog().warn("Unable to use a snapshot of " + relativePath(script) + ": " + e.getMessage());
+            }
+        }
+
+        cl.createArg(true).setValue((cachedSnapshot != null ? cachedSnapshot : script).getAbsolutePath());
+        if (trainingSnapshot != null) {
+            cl.createArg(true).setValue(ARGUMENT_SNAPSHOT_KIND + SNAPSHOT_KIND_APP_JIT);
+            cl.createArg(true).setValue(ARGUMENT_SNAPSHOT + trainingSnapshot.getAbsolutePath());
+        }
         if (!this.arguments.isEmpty()) {
 
             for (String arg : this.arguments) {
@@ -182,7 +231,7 @@ public class DartMojo extends PubMojo {
 
         try {
 
-            final int returnValue = CommandLineUtils.executeCommandLine(cl, output, error);
+            final int returnValue = executeCommandLine("dart", relativePath(script), cl, output, error);
 
             if (getLog().isDebugEnabled()) {
                 getLog().debug("dart return code: " + returnValue);
@@ -190,8 +239,18 @@ public class DartMojo extends PubMojo {
             if (returnValue != 0) {
                 throw new MojoExecutionException("Dart returned error code " + returnValue);
             }
+            if (trainingSnapshot != null && trainingSnapshot.length() > 0) {
+                snapshots.store(snapshotName, snapshotKey, trainingSnapshot);
+                getLog().info("Wrote snapshot of " + relativePath(script) + " for the next runs.");
+            }
+        } catch (final IOException e) {
+            getLog().warn("Unable to keep the snapshot of " + relativePath(script) + ": " + e.getMessage());
         } catch (final CommandLineException e) {
             getLog().debug("dart error: ", e);
+        } finally {
+            if (trainingSnapshot != null) {
+                FileUtils.deleteQuietly(trainingSnapshot);
+            }
         }
 
         System.out.println();
@@ -207,12 +266,7 @@ public class DartMojo extends PubMojo {
             getLog().debug("Using dart '" + dartPath + "'.");
         }
 
-        final Commandline cl = new Commandline();
-        cl.setExecutable(dartPath);
-
-        if (isCheckedMode()) {
-            cl.createArg().setValue(ARGUMENT_CHECKED_MODE);
-        }
+        final Commandline cl = createDartCommandline(isCheckedMode());
 
         if (isDebug()) {
             cl.createArg().setValue(ARGUMENT_DEBUG + (isDebugPort() ? ":" + debugPort : ""));
@@ -237,6 +291,29 @@ public class DartMojo extends PubMojo {
         return cl;
     }
 
+    /**
+     * Whether to run the script from an app-jit snapshot, only if enabled and supported by the dart-sdk.
+     */
+    private boolean isSnapshot() {
+        if (!snapshot || isDebug() || isBreakAt() || isUseScriptSnapshot()) {
+            return false;
+        }
+        if (!getSdkDescriptor().supports(SdkDescriptor.DART, ARGUMENT_SNAPSHOT_KIND)) {
+            getLog().debug("Dart-sdk does not support app-jit snapshots, running " + relativePath(script)
+                + " from source.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The package root resolving the package imports of the script, its directory if it is in none.
+     */
+    private File getScriptPackageRoot() {
+        final File packageRoot = findDartPackageRoot(script);
+        return packageRoot != null ? packageRoot : script.getAbsoluteFile().getParentFile();
+    }
+
     protected void checkDart() throws MojoExecutionException {
         checkDartSdk();
         if (!getDartExecutable().canExecute()) {
@@ -245,10 +322,6 @@ public class DartMojo extends PubMojo {
         }
     }
 
-    protected File getDartExecutable() {
-        return new File(getDartSdk(), "bin/dart" + (OsUtil.isWindows() ? ".exe" : ""));
-    }
-
     protected String buildPackagePath() {
         StringBuilder sb = new StringBuilder(ARGUMENT_PACKAGE_PATH);
         sb.append(new File(sourceDirectory, packagePath).getAbsolutePath());
@@ -1,6 +1,14 @@
 package com.google.dart;
 
-import com.google.common.base.Throwables;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.dart.util.DartImportGraph;
+import com.google.dart.util.FileHashes;
+import com.google.dart.util.Fingerprints;
+import com.google.dart.util.ParallelRunner;
+import com.google.dart.util.PubspecFinder;
+import com.google.dart.util.SystemResources;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -8,15 +16,29 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.StreamConsumer;
-import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Goal to invoke the dart web compiler.
@@ -28,84 +50,340 @@ public class DartWebMojo extends DartMojo {
 
     private final static String ARGUMENT_OUT = "--out";
 
+    /**
+     * The fingerprint key of a single entry page, which is compiled into the output directory itself.
+     */
+    private final static String ROOT_ENTRY = ".";
+
+    /**
+     * The inputs of an entry page besides the page itself: its components, scripts and styles.
+     */
+    private final static Set<String> INPUT_EXTENSIONS = new HashSet<>(Arrays.asList("html", "dart", "css"));
+
+    private final static Pattern SCRIPT_SOURCE =
+        Pattern.compile("<script\\b[^>]*\\bsrc\\s*=\\s*(['\"])([^'\"]+\\.dart)\\1", Pattern.CASE_INSENSITIVE);
+
     @Parameter(property = "output", defaultValue = "${project.build.directory}/generated-sources/dwc")
     private File outputDir;
 
     @Parameter(property = "htmlFile", defaultValue = "web/index.html")
     private String htmlFile;
 
+    /**
+     * The html entry pages to compile, relative to the source directory. Overrides {@link #htmlFile}. With more than
+     * one entry page, every page is compiled into a directory of its own below the output directory: the path of the
+     * page relative to the source directory without extension, e.g. web/admin/index for web/admin/index.html.
+     *
+     * @since 3.1.0
+     */
+    @Parameter
+    private List<String> htmlFiles = new ArrayList<>();
+
+    /**
+     * The number of entry pages compiled in parallel, the number of available cpus if not positive.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "0", property = "dart.dwc.threadCount")
+    private int threadCount;
+
+    /**
+     * The file recording the fingerprint of the inputs of every entry page after its last successful compile, by the
+     * directory of the entry page below the output directory. Entry pages with unchanged inputs are not compiled
+     * again, and the directories of entry pages no longer configured are deleted.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${project.build.directory}/dart-dwc-fingerprints.properties",
+        property = "dart.dwc.fingerprints")
+    private File fingerprintFile;
+
     @Parameter(property = "dwcScript", defaultValue = "packages/web_ui/dwc.dart")
     private String dwcScript;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
+        try {
+            executeDwc();
+        } finally {
+            writeMetrics("dwc");
+        }
+    }
+
+    private void executeDwc() throws MojoExecutionException {
 
         final Set<File> dartPackageRoots = findDartPackageRoots();
         processPubDependencies(dartPackageRoots);
 
         checkDart();
-        String dartPath = getDartExecutable().getAbsolutePath();
-
-        if (getLog().isDebugEnabled()) {
-            getLog().debug("Using dart '" + dartPath + "'.");
-        }
-
-        final Commandline cl = new Commandline();
-        cl.setExecutable(dartPath);
-
-        cl.createArg().setValue(buildPackagePath());
 
-        File dwc = new File(sourceDirectory, dwcScript);
+        final File dwc = new File(sourceDirectory, dwcScript);
         if (!dwc.exists())
             throw new MojoExecutionException("The dwc script does not exist here: " + dwc.getAbsolutePath());
 
-        cl.createArg().setValue(dwc.getAbsolutePath());
-
-        // Ensure the output location exists.
+        final List<File> entries = new ArrayList<>();
+        for (final String entry : htmlFiles.isEmpty() ? Collections.singletonList(htmlFile) : htmlFiles) {
+            final File html = new File(sourceDirectory, entry);
+            if (!html.exists())
+                throw new MojoExecutionException("The HTML file does not exist here: " + html.getAbsolutePath());
+            entries.add(html);
+        }
 
-        try {
-            FileUtils.deleteDirectory(outputDir);
-        } catch (IOException e) {
-            throw Throwables.propagate(e);
+        final Map<String, File> entryDirectories = new LinkedHashMap<>();
+        for (final File html : entries) {
+            entryDirectories.put(entries.size() == 1 ? ROOT_ENTRY : toEntryDirectory(sourceDirectory, html), html);
         }
 
+        // outputs of entry pages compiled before are kept, so unchanged pages need no compile
+        final Fingerprints fingerprints = Fingerprints.load(fingerprintFile);
+        deleteStaleOutputs(fingerprints, entryDirectories.keySet());
         outputDir.mkdirs();
 
-        cl.createArg().setValue(ARGUMENT_OUT);
-        cl.createArg().setValue(outputDir.getAbsolutePath());
-
-
-        // Root HTML:
-        File html = new File(sourceDirectory, htmlFile);
-        if (!html.exists())
-            throw new MojoExecutionException("The HTML file does not exist here: " + html.getAbsolutePath());
-        cl.createArg().setValue(html.getAbsolutePath());
+        final FileHashes fileHashes = new FileHashes();
+        final String dartVersion = readDartVersion();
+        final List<ParallelRunner.Task<Boolean>> compiles = new ArrayList<>();
+        for (final Map.Entry<String, File> entry : entryDirectories.entrySet()) {
+            final String entryDirectory = entry.getKey();
+            final File html = entry.getValue();
+            final File entryOutputDir = new File(outputDir, entryDirectory).toPath().normalize().toFile();
+            final Commandline cl = createDwcCommandline(dwc, html, entryOutputDir);
+            final String key = relativePath(html);
+            final String fingerprint;
+            try {
+                fingerprint = computeFingerprint(html, cl, dartVersion, fileHashes);
+            } catch (final IOException e) {
+                throw new MojoExecutionException("Unable to fingerprint the inputs of " + key, e);
+            }
+            if (fingerprints.matches(entryDirectory, fingerprint)
+                && new File(entryOutputDir, html.getName()).isFile()) {
+                getLog().info("Skip dwc for " + key + ", inputs unchanged.");
+                getMetrics().skipped("dwc", key, "inputs unchanged");
+                continue;
+            }
+            compiles.add(new ParallelRunner.Task<Boolean>() {
+                @Override
+                public Boolean run(final StreamConsumer output) {
+                    fingerprints.remove(entryDirectory);
+                    try {
+                        // the output directory of a single entry page may hold the output of another page before
+                        if (ROOT_ENTRY.equals(entryDirectory)) {
+                            FileUtils.deleteDirectory(entryOutputDir);
+                        }
+                    } catch (final IOException e) {
+                        getLog().error("Unable to delete the output of " + key + ": " + e.getMessage());
+                        return false;
+                    }
+                    if (runDwc(key, cl, output)) {
+                        fingerprints.put(entryDirectory, fingerprint);
+                        return true;
+                    }
+                    return false;
+                }
+            });
+        }
 
+        final long start = System.currentTimeMillis();
+        try {
+            if (!compiles.isEmpty()) {
+                runInParallel(compiles);
+            }
+        } finally {
+            getMetrics().phase("dwc", start);
+            try {
+                fingerprints.save();
+            } catch (final IOException e) {
+                getLog().warn("Unable to write dwc fingerprints '" + fingerprintFile.getAbsolutePath() + "'.", e);
+            }
+        }
+    }
 
-        final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
-        final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
+    /**
+     * Delete the outputs of the entry pages compiled before but no longer configured. A single entry page was
+     * compiled into the output directory itself, so everything in it is deleted but the directories of the
+     * configured entry pages.
+     */
+    private void deleteStaleOutputs(final Fingerprints fingerprints, final Set<String> entryDirectories)
+        throws MojoExecutionException {
+        final Set<String> kept = new HashSet<>();
+        for (final String entryDirectory : entryDirectories) {
+            kept.add(entryDirectory.split("/")[0]);
+        }
+        for (final String stale : fingerprints.keys()) {
+            if (entryDirectories.contains(stale)) {
+                continue;
+            }
+            getLog().info("Delete the output of the entry page no longer configured: " + stale);
+            fingerprints.remove(stale);
+            try {
+                if (ROOT_ENTRY.equals(stale)) {
+                    final File[] outputs = outputDir.listFiles();
+                    for (final File output : outputs != null ? outputs : new File[0]) {
+                        if (!kept.contains(output.getName())) {
+                            FileUtils.forceDelete(output);
+                        }
+                    }
+                } else {
+                    File directory = new File(outputDir, stale);
+                    FileUtils.deleteDirectory(directory);
+                    // and the parents left empty, e.g. web/admin of web/admin/index
+                    directory = directory.getParentFile();
+                    while (!directory.equals(outputDir) && directory.delete()) {
+                        directory = directory.getParentFile();
+                    }
+                }
+            } catch (final IOException e) {
+                throw new MojoExecutionException("Unable to delete the output of the entry page: " + stale, e);
+            }
+        }
+    }
 
-        getLog().info("Execute dart: " + cl.toString());
+    private Commandline createDwcCommandline(final File dwc, final File html, final File entryOutputDir) {
+        final Commandline cl = new Commandline();
+        cl.setExecutable(getDartExecutable().getAbsolutePath());
+        cl.createArg().setValue(buildPackagePath());
+        cl.createArg().setValue(dwc.getAbsolutePath());
+        cl.createArg().setValue(ARGUMENT_OUT);
+        cl.createArg().setValue(entryOutputDir.getAbsolutePath());
+        cl.createArg().setValue(html.getAbsolutePath());
+        return cl;
+    }
 
-        System.out.println();
-        System.out.println();
+    /**
+     * Compile the entry pages on a pool of {@link #threadCount} threads.
+     */
+    private void runInParallel(final List<ParallelRunner.Task<Boolean>> compiles) throws MojoExecutionException {
+        final int threads = Math.min(threadCount > 0 ? threadCount : SystemResources.getAvailableProcessors(),
+            compiles.size());
+        checkThreadCount("dart.dwc.threadCount", threadCount);
+        getLog().info("Run dwc for " + compiles.size() + " entry page" + (compiles.size() == 1 ? "" : "s")
+            + " with " + threads + " thread" + (threads == 1 ? "" : "s") + ".");
 
+        int failures = 0;
         try {
+            for (final boolean success : ParallelRunner.run(compiles, threads)) {
+                if (!success) {
+                    failures++;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while running dwc", e);
+        } catch (final ExecutionException e) {
+            throw new MojoExecutionException("Unable to run dwc", e.getCause());
+        }
+        if (failures > 0) {
+            throw new MojoExecutionException("Dwc failed for " + failures + " entry page" + (failures == 1 ? "" : "s")
+                + ".");
+        }
+    }
 
-            final int returnValue = CommandLineUtils.executeCommandLine(cl, output, error);
-
+    /**
+     * @return true if dwc succeeded
+     */
+    private boolean runDwc(final String key, final Commandline cl, final StreamConsumer output) {
+        try {
+            output.consumeLine("Execute dart: " + cl);
+            final int returnValue = executeCommandLine("dwc", key, cl, output, output);
             if (getLog().isDebugEnabled()) {
                 getLog().debug("dart return code: " + returnValue);
             }
             if (returnValue != 0) {
-                throw new MojoExecutionException("Dart returned error code " + returnValue);
+                getLog().error("Dart returned error code " + returnValue + " for " + cl);
+                return false;
             }
+            return true;
         } catch (final CommandLineException e) {
-            getLog().debug("dart error: ", e);
+            getLog().error("dart error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * A hash of everything the output of an entry page depends on: the dart-sdk version, the command line, the
+     * resolved dependencies, the html, dart and css files next to the page and all dart sources imported by the
+     * dart files next to the page and the scripts of the page, wherever they are.
+     */
+    private String computeFingerprint(final File html, final Commandline cl, final String dartVersion,
+        final FileHashes fileHashes) throws IOException {
+        final File packageRoot = findDartPackageRoot(html);
+        final Set<File> pageInputs = new LinkedHashSet<>();
+        collectInputs(html.getAbsoluteFile().getParentFile(), pageInputs);
+        final Set<File> inputs = new TreeSet<>(pageInputs);
+        if (packageRoot != null) {
+            final DartImportGraph importGraph = getImportGraph(packageRoot);
+            final Set<File> scripts = findScripts(html);
+            for (final File input : pageInputs) {
+                if (input.getName().endsWith(".dart")) {
+                    scripts.add(input);
+                }
+            }
+            for (final File script : scripts) {
+                inputs.addAll(importGraph.getTransitiveSources(script));
+            }
+            inputs.add(new File(packageRoot, "pubspec.lock").getAbsoluteFile());
         }
 
-        System.out.println();
-        System.out.println();
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(dartVersion, Charsets.UTF_8).putByte((byte) 0);
+        for (final String argument : cl.getArguments()) {
+            hasher.putString(argument, Charsets.UTF_8).putByte((byte) 0);
+        }
+        for (final File input : inputs) {
+            hasher.putString(relativePath(input), Charsets.UTF_8).putByte((byte) 0);
+            if (input.isFile()) {
+                hasher.putString(fileHashes.hash(input), Charsets.UTF_8);
+            }
+            hasher.putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * The directory of an entry page below the output directory: its path relative to the source directory without
+     * extension, so pages of the same name in different directories don't overwrite each other.
+     */
+    static String toEntryDirectory(final File sourceDirectory, final File html) {
+        return relativize(sourceDirectory, html).replace(File.separatorChar, '/').replaceFirst("\\.[^./]*$", "");
     }
 
+    /**
+     * The dart scripts the given page loads by a <code>src</code> attribute, e.g. from the lib directory.
+     */
+    static Set<File> findScripts(final File html) throws IOException {
+        final String content = new String(Files.readAllBytes(html.toPath()), Charsets.UTF_8);
+        final Set<File> scripts = new TreeSet<>();
+        final Matcher matcher = SCRIPT_SOURCE.matcher(content);
+        while (matcher.find()) {
+            final String source = matcher.group(2);
+            if (!source.contains(":")) {
+                scripts.add(new File(html.getAbsoluteFile().getParentFile(), source).toPath().normalize().toFile());
+            }
+        }
+        return scripts;
+    }
+
+    private static void collectInputs(final File directory, final Set<File> inputs) throws IOException {
+        if (!directory.isDirectory()) {
+            return;
+        }
+        final List<File> files = new ArrayList<>();
+        Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                return !dir.equals(directory.toPath()) && PubspecFinder.isPruned(dir)
+                    ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                final String name = file.getFileName().toString();
+                if (attrs.isRegularFile() && INPUT_EXTENSIONS.contains(name.substring(name.lastIndexOf('.') + 1))) {
+                    files.add(file.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(files);
+        inputs.addAll(files);
+    }
 }
@@ -1,20 +1,28 @@
 package com.google.dart;
 
-import com.google.dart.util.OsUtil;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.dart.util.Fingerprints;
+import com.google.dart.util.ParallelRunner;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.StreamConsumer;
 import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Goal to invoke the dart pub package manager.
@@ -24,6 +32,11 @@ import java.util.Set;
 @Mojo(name = "pub", threadSafe = true)
 public class PubMojo extends AbstractDartMojo {
 
+    /**
+     * The pub commands which only resolve the dependencies given by pubspec.yaml and pubspec.lock.
+     */
+    private final static Set<String> FINGERPRINTED_COMMANDS = ImmutableSet.of("get", "install");
+
     /**
      * The command pub should execute.
      *
@@ -40,10 +53,43 @@ public class PubMojo extends AbstractDartMojo {
     @Parameter
     private List<String> pubOptions;
 
+    /**
+     * Set this to 'true' to run pub for every package root, even if its pubspec.yaml and pubspec.lock are
+     * unchanged since the last successful run.
+     * <p/>
+     * Only the commands 'get' and 'install' are skipped for unchanged package roots.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "false", property = "dart.pub.force")
+    private boolean pubForce;
+
+    /**
+     * The file recording the fingerprints of pubspec.yaml and pubspec.lock of every package root after the last
+     * successful pub run.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${project.build.directory}/dart-pub-fingerprints.properties",
+        property = "dart.pub.fingerprints")
+    private File pubFingerprintFile;
+
+    /**
+     * The number of package roots pub resolves in parallel.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "1", property = "dart.pub.threadCount")
+    private int pubThreadCount;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
-        final Set<File> dartPackageRoots = findDartPackageRoots();
-        processPubDependencies(dartPackageRoots);
+        try {
+            final Set<File> dartPackageRoots = findDartPackageRoots();
+            processPubDependencies(dartPackageRoots);
+        } finally {
+            writeMetrics("pub");
+        }
     }
 
     protected void processPubDependencies(final Set<File> dartPackageRoots) throws MojoExecutionException {
@@ -52,20 +98,120 @@ public class PubMojo extends AbstractDartMojo {
             getLog().info("Updating dependencies (pub packagemanager) is skipped.");
             return;
         }
-        String pubPath;
         checkPub();
-        pubPath = getDartExecutable().getAbsolutePath();
 
         if (getLog().isDebugEnabled()) {
-            getLog().debug("Using dart '" + pubPath + "'.");
+            getLog().debug("Using dart '" + getDartExecutable().getAbsolutePath() + "'.");
             getLog().debug("basedir: " + getBasedir());
+            getLog().debug("Base pub command: " + createPubCommandline(getBasedir()).toString());
         }
 
-        final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
-        final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
+        final Fingerprints fingerprints = Fingerprints.load(pubFingerprintFile);
+        final String dartVersion = readDartVersion();
 
+        final List<File> outdatedPackageRoots = new ArrayList<>();
+        for (final File dartPackageRoot : dartPackageRoots) {
+            if (isFingerprintUnchanged(fingerprints, dartPackageRoot, dartVersion)) {
+                getLog().info("Skip pub for unchanged package root: " + relativePath(dartPackageRoot));
+                getMetrics().skipped("pub", relativePath(dartPackageRoot), "fingerprint unchanged");
+            } else {
+                fingerprints.remove(relativePath(dartPackageRoot));
+                outdatedPackageRoots.add(dartPackageRoot);
+            }
+        }
+
+        System.out.println();
+        System.out.println();
+
+        final long start = System.currentTimeMillis();
+        try {
+            if (pubThreadCount <= 1 || outdatedPackageRoots.size() <= 1) {
+                final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
+                final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
+                for (final File dartPackageRoot : outdatedPackageRoots) {
+                    runPub(dartPackageRoot, output, error, fingerprints, dartVersion);
+                }
+            } else {
+                runPubInParallel(outdatedPackageRoots, fingerprints, dartVersion);
+            }
+        } finally {
+            getMetrics().phase("pub", start);
+            try {
+                fingerprints.save();
+            } catch (IOException e) {
+                getLog().warn("Unable to write pub fingerprints '" + pubFingerprintFile.getAbsolutePath() + "'.", e);
+            }
+        }
+
+        System.out.println();
+        System.out.println();
+    }
+
+    /**
+     * Run pub for every package root on a pool of {@link #pubThreadCount} threads. The output of every package root
+     * is buffered and printed as one block. The first failure cancels all package roots not yet finished.
+     */
+    private void runPubInParallel(final List<File> dartPackageRoots, final Fingerprints fingerprints,
+        final String dartVersion) throws MojoExecutionException {
+        checkThreadCount("dart.pub.threadCount", pubThreadCount);
+        getLog().info("Run pub for " + dartPackageRoots.size() + " package roots with " + pubThreadCount
+            + " threads in parallel.");
+
+        final List<ParallelRunner.Task<File>> tasks = new ArrayList<>();
+        for (final File dartPackageRoot : dartPackageRoots) {
+            tasks.add(new ParallelRunner.Task<File>() {
+                @Override
+                public File run(final StreamConsumer output) throws MojoExecutionException {
+                    runPub(dartPackageRoot, output, output, fingerprints, dartVersion);
+                    return dartPackageRoot;
+                }
+            });
+        }
+
+        try {
+            ParallelRunner.run(tasks, pubThreadCount);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while running pub", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof MojoExecutionException) {
+                throw (MojoExecutionException) e.getCause();
+            }
+            throw new MojoExecutionException("Unable to execute pub", e.getCause());
+        }
+    }
+
+    private void runPub(final File dartPackageRoot, final StreamConsumer output, final StreamConsumer error,
+        final Fingerprints fingerprints, final String dartVersion) throws MojoExecutionException {
+        // logged through the output, so the output of every package root stays one block in parallel runs
+        output.consumeLine("Run pub for package root: " + relativePath(dartPackageRoot));
+        final Commandline cl = createPubCommandline(dartPackageRoot);
+        if (getLog().isDebugEnabled()) {
+            output.consumeLine("Execute pub command: " + cl.toString());
+        }
+        try {
+            final int returnCode = executeCommandLine("pub", relativePath(dartPackageRoot), cl, output, error);
+            if (getLog().isDebugEnabled()) {
+                output.consumeLine("pub return code: " + returnCode);
+            }
+            if (returnCode != 0) {
+                throw new MojoExecutionException("Pub returned error code " + returnCode + " for package root: "
+                    + relativePath(dartPackageRoot));
+            }
+            fingerprints.put(relativePath(dartPackageRoot), computeFingerprint(dartPackageRoot, dartVersion));
+        } catch (CommandLineException e) {
+            throw new MojoExecutionException("Unable to execute pub for package root: "
+                + relativePath(dartPackageRoot), e);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to fingerprint package root: "
+                + relativePath(dartPackageRoot), e);
+        }
+    }
+
+    private Commandline createPubCommandline(final File dartPackageRoot) {
         final Commandline cl = new Commandline();
-        cl.setExecutable(pubPath);
+        cl.setExecutable(getDartExecutable().getAbsolutePath());
+        cl.setWorkingDirectory(dartPackageRoot);
 
         cl.createArg().setValue("pub");
         cl.createArg().setValue(pubCommand);
@@ -75,35 +221,53 @@ public class PubMojo extends AbstractDartMojo {
                 cl.createArg().setValue(option);
             }
         }
+        return cl;
+    }
 
-        if (getLog().isDebugEnabled()) {
-            getLog().debug("Base pub command: " + cl.toString());
+    /**
+     * A package root is unchanged if pub resolved its dependencies before, pubspec.yaml, pubspec.lock, the pub
+     * command and the dart-sdk are the same as on the last successful run.
+     */
+    private boolean isFingerprintUnchanged(final Fingerprints fingerprints, final File dartPackageRoot,
+        final String dartVersion) throws MojoExecutionException {
+        if (isPubForce() || !FINGERPRINTED_COMMANDS.contains(pubCommand) || !isResolved(dartPackageRoot)) {
+            return false;
         }
-
-        System.out.println();
-        System.out.println();
-
         try {
-            for (final File dartPackageRoot : dartPackageRoots) {
-                getLog().info("Run pub for package root: " + relativePath(dartPackageRoot));
-                cl.setWorkingDirectory(dartPackageRoot);
-                if (getLog().isDebugEnabled()) {
-                    getLog().debug("Execute pub command: " + cl.toString());
-                }
-                final int returnCode = CommandLineUtils.executeCommandLine(cl, output, error);
-                if (getLog().isDebugEnabled()) {
-                    getLog().debug("pub return code: " + returnCode);
-                }
-                if (returnCode != 0) {
-                    throw new MojoExecutionException("Pub returned error code " + returnCode);
-                }
+            return fingerprints.matches(relativePath(dartPackageRoot),
+                computeFingerprint(dartPackageRoot, dartVersion));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to fingerprint package root", e);
+        }
+    }
+
+    private String computeFingerprint(final File dartPackageRoot, final String dartVersion) throws IOException {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(dartVersion, Charsets.UTF_8).putByte((byte) 0);
+        hasher.putString(pubCommand, Charsets.UTF_8).putByte((byte) 0);
+        if (pubOptions != null) {
+            for (final String option : pubOptions) {
+                hasher.putString(option, Charsets.UTF_8).putByte((byte) 0);
             }
-        } catch (CommandLineException e) {
-            throw new MojoExecutionException("Unable to execute pub", e);
         }
+        for (final String name : new String[]{"pubspec.yaml", "pubspec.lock"}) {
+            final File file = new File(dartPackageRoot, name);
+            hasher.putString(name, Charsets.UTF_8).putByte((byte) 0);
+            if (file.isFile()) {
+                hasher.putBytes(Files.toByteArray(file));
+            }
+            hasher.putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
 
-        System.out.println();
-        System.out.println();
+    /**
+     * Check for the packages directory or the package configuration written by pub.
+     */
+    private boolean isResolved(final File dartPackageRoot) {
+        return new File(dartPackageRoot, "packages").isDirectory()
+            || new File(dartPackageRoot, ".packages").isFile()
+            || new File(dartPackageRoot, ".dart_tool/package_config.json").isFile();
     }
 
     protected void checkPub() throws MojoExecutionException {
@@ -114,11 +278,11 @@ public class PubMojo extends AbstractDartMojo {
         }
     }
 
-    private File getDartExecutable() {
-        return new File(getDartSdk(), "bin/dart" + (OsUtil.isWindows() ? ".exe" : ""));
-    }
-
     public boolean isPubSkipped() {
         return false;
     }
+
+    protected boolean isPubForce() {
+        return pubForce;
+    }
 }
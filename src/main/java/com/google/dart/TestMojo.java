@@ -1,24 +1,36 @@
 package com.google.dart;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.dart.util.BuildHistory;
+import com.google.dart.util.JsonTestReporter;
+import com.google.dart.util.ParallelRunner;
+import com.google.dart.util.Sharding;
+import com.google.dart.util.SurefireReportWriter;
+import com.google.dart.util.TestResult;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.DirectoryScanner;
-import org.codehaus.plexus.util.cli.Arg;
 import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.StreamConsumer;
 import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Goal to invoke the dart tests.
@@ -28,6 +40,41 @@ import java.util.Set;
 @Mojo(name = "test", threadSafe = true, defaultPhase = LifecyclePhase.TEST)
 public class TestMojo extends DartMojo {
 
+    private final static String RUNNER_FILE = "file";
+
+    private final static String RUNNER_PACKAGE = "package";
+
+    /**
+     * Print the results of the package:test runner as json events.
+     *
+     * @since 3.1.0
+     */
+    private final static String ARGUMENT_REPORTER_JSON = "--reporter=json";
+
+    /**
+     * The number of concurrent test suites run by the package:test runner.
+     *
+     * @since 3.1.0
+     */
+    private final static String ARGUMENT_CONCURRENCY = "--concurrency=";
+
+    /**
+     * The platform the package:test runner runs the tests on.
+     *
+     * @since 3.1.0
+     */
+    private final static String ARGUMENT_PLATFORM = "--platform=";
+
+    /**
+     * The test files run if no includes are configured, also run by the watch goal.
+     */
+    final static Set<String> DEFAULT_INCLUDES = ImmutableSet.of("test/**/*.dart");
+
+    /**
+     * The test files skipped if no excludes are configured, also skipped by the watch goal.
+     */
+    final static Set<String> DEFAULT_EXCLUDES = ImmutableSet.of("test/**/packages/**");
+
     /**
      * A list of inclusion filters for the dart2js compiler.
      * <p/>
@@ -74,71 +121,337 @@ public class TestMojo extends DartMojo {
     @Parameter(property = "maven.test.failure.ignore", defaultValue = "false")
     private boolean testFailureIgnore;
 
+    /**
+     * The number of test files run in parallel.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "1", property = "dart.test.threadCount")
+    private int threadCount;
+
+    /**
+     * How tests are run. 'file' runs every test file in a dart vm of its own, 'package' runs the package:test
+     * runner once per package root and reports the result of every single test.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = RUNNER_FILE, property = "dart.test.runner")
+    private String testRunner;
+
+    /**
+     * The number of test suites the package:test runner runs in parallel. 0 keeps the default of the runner.
+     * Only used by the 'package' test runner.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "0", property = "dart.test.concurrency")
+    private int concurrency;
+
+    /**
+     * The platforms the package:test runner runs the tests on, e.g. 'vm' or 'chrome'.
+     * Only used by the 'package' test runner.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(property = "dart.test.platforms")
+    private List<String> platforms;
+
+    /**
+     * The directory the surefire compatible xml reports of all tests are written to.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${project.build.directory}/dart-test-reports", property = "dart.test.reportsDirectory")
+    private File reportsDirectory;
+
+    /**
+     * The number of slowest tests listed after all tests are run. 0 disables the list.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "10", property = "dart.test.slowestCount")
+    private int slowestTestCount;
+
+    /**
+     * The number of shards the test files are split into, e.g. the number of CI agents running the tests.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "1", property = "dart.test.shardCount")
+    private int shardCount;
+
+    /**
+     * The shard of the test files to run, from 0 to shardCount - 1.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "0", property = "dart.test.shardIndex")
+    private int shardIndex;
+
+    /**
+     * The durations of test files recorded by previous runs, a file or a directory of files written to
+     * {@link #timingsOutputDirectory}, e.g. the collected timings of all shards of the last CI build, which are
+     * merged. If given, shards are balanced by these durations, so every CI agent must be given the same timings.
+     * Otherwise the test files are sorted by path and distributed round robin. This file is never written.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(property = "dart.test.timings")
+    private File timingsFile;
+
+    /**
+     * The directory the durations of the test files run are written to, one file per shard, to be merged into the
+     * {@link #timingsFile} of later runs.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "${project.build.directory}/dart-test-timings", property = "dart.test.timingsOutput")
+    private File timingsOutputDirectory;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
 
-        final Set<File> dartPackageRoots = findDartPackageRoots();
+        try {
+            final Set<File> dartPackageRoots = findDartPackageRoots();
 
-        processPubDependencies(dartPackageRoots);
+            processPubDependencies(dartPackageRoots);
 
-        if (isSkipTests()) {
-            getLog().info("Tests are skipped.");
-        } else {
-            executeTests(dartPackageRoots);
+            if (isSkipTests()) {
+                getLog().info("Tests are skipped.");
+            } else {
+                final long start = System.currentTimeMillis();
+                try {
+                    executeTests(dartPackageRoots);
+                } finally {
+                    getMetrics().phase("test", start);
+                }
+            }
+        } finally {
+            writeMetrics("test");
         }
     }
 
     private void executeTests(final Set<File> dartPackageRoots) throws MojoExecutionException, MojoFailureException {
 
-        final Commandline cl = createBaseCommandline();
+        final Set<File> testSources = computeTestToRun(dartPackageRoots);
 
-        final Arg scriptArg = cl.createArg(false);
+        System.out.println();
+        System.out.println();
 
-        final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
-        final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
+        final List<TestResult> results = Collections.synchronizedList(new ArrayList<TestResult>());
+        boolean fail = false;
 
-        final Set<File> testSources = computeTestToRun(dartPackageRoots);
+        if (isPackageRunner()) {
+            fail = !executePackageTests(dartPackageRoots, testSources, results);
+        } else {
+            final Commandline baseCommandline = createBaseCommandline();
+            if (threadCount <= 1 || testSources.size() <= 1) {
+                final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
+                final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
+                for (final File dartTestFile : testSources) {
+                    results.add(runTest(baseCommandline, dartTestFile, output, error));
+                }
+            } else {
+                runTestsInParallel(baseCommandline, testSources, results);
+            }
+        }
+
+        for (final TestResult result : results) {
+            fail |= !result.isSuccessful();
+        }
+        writeReports(results);
+        recordTimings(results);
+        logSlowestTests(results);
+
+        reportExecution(testSources, fail);
 
         System.out.println();
         System.out.println();
 
-        boolean fail = false;
+    }
+
+    /**
+     * Run all tests on a pool of {@link #threadCount} threads. The output of every test is buffered and printed as
+     * one block when the test is done.
+     */
+    private void runTestsInParallel(final Commandline baseCommandline, final Set<File> testSources,
+        final List<TestResult> results) throws MojoExecutionException {
+        checkThreadCount("dart.test.threadCount", threadCount);
+        getLog().info("Run " + testSources.size() + " tests with " + threadCount + " threads in parallel.");
 
+        final List<ParallelRunner.Task<TestResult>> tasks = new ArrayList<>();
         for (final File dartTestFile : testSources) {
-            try {
+            tasks.add(new ParallelRunner.Task<TestResult>() {
+                @Override
+                public TestResult run(final StreamConsumer output) throws MojoExecutionException {
+                    return runTest(baseCommandline, dartTestFile, output, output);
+                }
+            });
+        }
 
-                scriptArg.setValue(dartTestFile.getAbsolutePath());
+        try {
+            results.addAll(ParallelRunner.run(tasks, threadCount));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while running tests", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof MojoExecutionException) {
+                throw (MojoExecutionException) e.getCause();
+            }
+            throw new MojoExecutionException("Unable to run tests", e.getCause());
+        }
+    }
 
-                getLog().info("Execute test: " + dartTestFile.getAbsolutePath());
+    /**
+     * Run the package:test runner once per package root with the json reporter.
+     *
+     * @return true if the runner reported success for all package roots
+     */
+    private boolean executePackageTests(final Set<File> dartPackageRoots, final Set<File> testSources,
+        final List<TestResult> results) throws MojoExecutionException {
+        checkDart();
+        final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
+        final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
 
-                if (getLog().isDebugEnabled()) {
-                    getLog().debug("Execute test command: " + cl.toString());
+        final Map<File, List<String>> testFilesByPackageRoot = new HashMap<>();
+        for (final File testSource : testSources) {
+            final File dartPackageRoot = findDartPackageRoot(testSource);
+            if (dartPackageRoot != null) {
+                List<String> testFiles = testFilesByPackageRoot.get(dartPackageRoot);
+                if (testFiles == null) {
+                    testFiles = new ArrayList<>();
+                    testFilesByPackageRoot.put(dartPackageRoot, testFiles);
                 }
+                testFiles.add(relativize(dartPackageRoot, testSource));
+            }
+        }
 
-                final int returnValue = CommandLineUtils.executeCommandLine(cl, output, error);
-                System.out.println();
-                System.out.println();
-
+        boolean success = true;
+        for (final File dartPackageRoot : dartPackageRoots) {
+            final List<String> testFiles = testFilesByPackageRoot.get(dartPackageRoot);
+            if (testFiles == null) {
+                continue;
+            }
+            final Commandline cl = createPackageTestCommandline(dartPackageRoot, testFiles);
+            getLog().info("Execute tests of package root: " + relativePath(dartPackageRoot));
+            if (getLog().isDebugEnabled()) {
+                getLog().debug("Execute test command: " + cl.toString());
+            }
+            final JsonTestReporter reporter = new JsonTestReporter(output);
+            try {
+                final int returnValue = executeCommandLine("test", relativePath(dartPackageRoot), cl, reporter,
+                    error);
                 if (getLog().isDebugEnabled()) {
                     getLog().debug("test return code: " + returnValue);
                 }
-                if (returnValue != 0 && returnValue != 255) {
-                    throw new MojoExecutionException("Test fail returned error code " + returnValue);
-                } else if (returnValue == 255) {
-                    fail = true;
+                if (returnValue != 0 && reporter.getSuccess() == null) {
+                    throw new MojoExecutionException("Test runner returned error code " + returnValue
+                        + " for package root: " + relativePath(dartPackageRoot));
                 }
-
+                success &= returnValue == 0 && !Boolean.FALSE.equals(reporter.getSuccess());
             } catch (final CommandLineException e) {
                 getLog().error("error running tests: ", e);
-                fail = true;
+                success = false;
+            }
+            logTestResults(reporter.getResults());
+            // suites are reported relative to the package root
+            for (final TestResult result : reporter.getResults()) {
+                final String suite = toSuitePath(getBasedir(), new File(dartPackageRoot, result.getSuite()));
+                results.add(new TestResult(suite, result.getName(), result.getStatus(), result.getDurationMillis(),
+                    result.getMessage(), result.getOutput()));
             }
         }
+        return success;
+    }
 
-        reportExecution(testSources, fail);
+    /**
+     * The command line running the given test files, relative to the package root.
+     */
+    private Commandline createPackageTestCommandline(final File dartPackageRoot, final List<String> testFiles) {
+        Collections.sort(testFiles);
+
+        final Commandline cl = new Commandline();
+        cl.setExecutable(getDartExecutable().getAbsolutePath());
+        cl.setWorkingDirectory(dartPackageRoot);
+        cl.createArg().setValue("pub");
+        cl.createArg().setValue("run");
+        cl.createArg().setValue("test");
+        cl.createArg().setValue(ARGUMENT_REPORTER_JSON);
+        if (concurrency > 0) {
+            cl.createArg().setValue(ARGUMENT_CONCURRENCY + concurrency);
+        }
+        if (platforms != null) {
+            for (final String platform : platforms) {
+                cl.createArg().setValue(ARGUMENT_PLATFORM + platform);
+            }
+        }
+        for (final String testFile : testFiles) {
+            cl.createArg().setValue(testFile);
+        }
+        return cl;
+    }
 
-        System.out.println();
-        System.out.println();
+    private void logTestResults(final List<TestResult> results) {
+        int failures = 0;
+        int errors = 0;
+        int skipped = 0;
+        for (final TestResult result : results) {
+            switch (result.getStatus()) {
+                case FAILED:
+                    failures++;
+                    break;
+                case ERROR:
+                    errors++;
+                    break;
+                case SKIPPED:
+                    skipped++;
+                    break;
+                default:
+                    break;
+            }
+            if (!result.isSuccessful()) {
+                getLog().error(result.getStatus() + ": " + result.getSuite() + ": " + result.getName() + "\n"
+                    + result.getMessage());
+            }
+        }
+        getLog().info("Tests run: " + results.size() + ", Failures: " + failures + ", Errors: " + errors
+            + ", Skipped: " + skipped);
+    }
+
+    private void writeReports(final List<TestResult> results) {
+        try {
+            new SurefireReportWriter(reportsDirectory).write(results);
+        } catch (final IOException e) {
+            getLog().warn("Unable to write test reports to '" + reportsDirectory.getAbsolutePath() + "'.", e);
+        }
+    }
 
+    /**
+     * Log the {@link #slowestTestCount} tests which took the longest time.
+     */
+    private void logSlowestTests(final List<TestResult> results) {
+        if (slowestTestCount <= 0 || results.isEmpty()) {
+            return;
+        }
+        final List<TestResult> slowest = new ArrayList<>(results);
+        Collections.sort(slowest, new Comparator<TestResult>() {
+            @Override
+            public int compare(final TestResult r1, final TestResult r2) {
+                return Long.compare(r2.getDurationMillis(), r1.getDurationMillis());
+            }
+        });
+        final StringBuilder builder = new StringBuilder();
+        builder.append("Top ").append(Math.min(slowestTestCount, slowest.size())).append(" slowest tests:\n");
+        for (final TestResult result : slowest.subList(0, Math.min(slowestTestCount, slowest.size()))) {
+            builder.append(String.format(Locale.ENGLISH, "\t%8.3fs  %s", result.getDurationMillis() / 1000.0,
+                result.getSuite()));
+            if (!result.getSuite().endsWith(result.getName())) {
+                builder.append(": ").append(result.getName());
+            }
+            builder.append("\n");
+        }
+        getLog().info("");
+        getLog().info(builder.toString());
     }
 
     private void reportExecution(final Set<File> testSources, final boolean fail) throws MojoFailureException {
@@ -168,14 +481,14 @@ public class TestMojo extends DartMojo {
 
     public Set<String> getIncludes() {
         if (includes.isEmpty()) {
-            return ImmutableSet.copyOf(Arrays.asList(new String[]{"test/**/*.dart"}));
+            return DEFAULT_INCLUDES;
         }
         return includes;
     }
 
     protected Set<String> getExcludes() {
         if (excludes.isEmpty()) {
-            return ImmutableSet.copyOf(Arrays.asList(new String[]{"test/**/packages/**"}));
+            return DEFAULT_EXCLUDES;
         }
         return excludes;
     }
@@ -188,12 +501,90 @@ public class TestMojo extends DartMojo {
             testToRun.addAll(scanForTests(packageRoot, getIncludes(), getExcludes()));
         }
 
+        if (shardCount > 1) {
+            return selectShard(testToRun);
+        }
         return testToRun;
     }
 
-    private Set<File> scanForTests(File sourceDir, Set<String> sourceIncludes, Set<String> sourceExcludes) {
+    /**
+     * Select the test files of shard {@link #shardIndex}. Test files are weighted by their duration recorded in
+     * {@link #timingsFile}, unknown test files by the average duration, and distributed longest first. Without
+     * timings all test files weigh the same, which distributes them round robin in the order of their paths.
+     */
+    private Set<File> selectShard(final Set<File> testFiles) throws MojoExecutionException {
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new MojoExecutionException("Shard index " + shardIndex + " must be between 0 and "
+                + (shardCount - 1) + ".");
+        }
+        final BuildHistory timings = BuildHistory.merge(timingsFile);
+        final long defaultDuration = Math.max(1, timings.getAverage());
+
+        final Map<String, File> testFilesByPath = new HashMap<>();
+        final Map<String, Long> weights = new HashMap<>();
+        for (final File testFile : testFiles) {
+            final String path = toSuitePath(getBasedir(), testFile);
+            final Long duration = timings.get(path);
+            testFilesByPath.put(path, testFile);
+            weights.put(path, duration != null ? duration : defaultDuration);
+        }
+
+        final Set<File> shard = new HashSet<>();
+        for (final String path : Sharding.distribute(weights, shardCount).get(shardIndex)) {
+            shard.add(testFilesByPath.get(path));
+        }
+        getLog().info("Run shard " + shardIndex + " of " + shardCount + ": " + shard.size() + " of "
+            + testFiles.size() + " test files"
+            + (timings.isEmpty() ? ", round robin." : ", balanced by recorded durations."));
+        return shard;
+    }
+
+    /**
+     * Record the duration of every test file run by this shard in {@link #timingsOutputDirectory} for balancing
+     * later runs.
+     */
+    private void recordTimings(final List<TestResult> results) {
+        final File file = new File(timingsOutputDirectory, "shard-" + (shardCount > 1 ? shardIndex : 0)
+            + ".properties");
+        final BuildHistory timings = BuildHistory.create(file);
+        final Map<String, Long> durations = new HashMap<>();
+        for (final TestResult result : results) {
+            final Long duration = durations.get(result.getSuite());
+            durations.put(result.getSuite(), (duration != null ? duration : 0) + result.getDurationMillis());
+        }
+        for (final Map.Entry<String, Long> duration : durations.entrySet()) {
+            timings.put(duration.getKey(), duration.getValue());
+        }
+        try {
+            timings.save();
+        } catch (final IOException e) {
+            getLog().warn("Unable to write test timings '" + file.getAbsolutePath() + "'.", e);
+        }
+    }
+
+    /**
+     * The command line running a single test file.
+     */
+    static Commandline createTestCommandline(final Commandline baseCommandline, final File dartTestFile) {
+        final Commandline cl = (Commandline) baseCommandline.clone();
+        cl.createArg().setValue(dartTestFile.getAbsolutePath());
+        return cl;
+    }
+
+    /**
+     * The path of a test file relative to the basedir, the key of its duration and the suite of its reports.
+     */
+    static String toSuitePath(final File basedir, final File testFile) {
+        return relativize(basedir, testFile).replace(File.separatorChar, '/');
+    }
+
+    /**
+     * The test files below the given package root matching the given includes and excludes.
+     */
+    static Set<File> scanForTests(File sourceDir, Set<String> sourceIncludes, Set<String> sourceExcludes) {
         DirectoryScanner ds = new DirectoryScanner();
-        ds.setFollowSymlinks(true);
+        // packages symlinks below the test directories lead to the sources of all dependencies
+        ds.setFollowSymlinks(false);
         ds.setBasedir(sourceDir);
 
         String[] includes;
@@ -241,4 +632,8 @@ public class TestMojo extends DartMojo {
     public boolean isSkipTests() {
         return skipTests;
     }
+
+    protected boolean isPackageRunner() {
+        return RUNNER_PACKAGE.equals(testRunner);
+    }
 }
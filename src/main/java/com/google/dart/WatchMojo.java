@@ -0,0 +1,296 @@
+package com.google.dart;
+
+import com.google.dart.util.BuildManifest;
+import com.google.dart.util.PubspecFinder;
+import com.google.dart.util.TestResult;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.codehaus.plexus.util.cli.WriterStreamConsumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Goal which compiles all dart files like the dart2js goal and then keeps watching the compile source roots,
+ * recompiling the dart files affected by every change until maven is stopped. Optionally the affected tests are run
+ * as well.
+ * <p/>
+ * Package roots, import graphs and content hashes stay in memory between changes, so a change costs little more than
+ * the compile of the dart files depending on it. The metrics of the last change are written as watch.json.
+ */
+@Mojo(name = "watch", threadSafe = true)
+public class WatchMojo extends Dart2JsMojo {
+
+    /**
+     * The time in ms without further changes to wait for before compiling, so a save of many files results in one
+     * compile.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "300", property = "dart.watch.debounce")
+    private long debounce;
+
+    /**
+     * Set this to 'true' to run the tests affected by a change after compiling.
+     *
+     * @since 3.1.0
+     */
+    @Parameter(defaultValue = "false", property = "dart.watch.tests")
+    private boolean watchTests;
+
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    /**
+     * The test files of every package root, scanned again once files are added or removed.
+     */
+    private final Map<File, Set<File>> testFiles = new HashMap<>();
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (isSkipDart2Js()) {
+            getLog().info("skipping dart2js execution");
+            return;
+        }
+
+        Set<File> dartPackageRoots = findDartPackageRoots();
+        processPubDependencies(dartPackageRoots);
+
+        final BuildManifest manifest = loadManifest();
+        checkDart2Js();
+        final String dartVersion = readDartVersion();
+        compile(dartPackageRoots, manifest, dartVersion);
+        writeMetrics("watch");
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            for (final File compileSourceRoot : getCompileSourceRoots()) {
+                register(watchService, compileSourceRoot.toPath());
+            }
+            getLog().info("Watching " + getCompileSourceRoots() + " for changes. Stop with Ctrl+C.");
+
+            while (!Thread.currentThread().isInterrupted()) {
+                final Set<File> changes = awaitChanges(watchService);
+                if (changes.isEmpty()) {
+                    continue;
+                }
+                logChanges(changes);
+                // every cycle is measured on its own, the metrics of a long running watch would grow without bound
+                resetMetrics();
+                try {
+                    for (final File changed : changes) {
+                        invalidateSource(changed);
+                    }
+                    if (affectsPackages(changes, dartPackageRoots)) {
+                        final Set<File> refreshed = refreshPackages();
+                        if (refreshed == null) {
+                            continue;
+                        }
+                        dartPackageRoots = refreshed;
+                    }
+                    if (compile(dartPackageRoots, manifest, dartVersion) && watchTests) {
+                        runAffectedTests(dartPackageRoots, changes);
+                    }
+                } finally {
+                    writeMetrics("watch");
+                }
+            }
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Unable to watch the compile source roots.", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            getLog().info("Stopped watching.");
+        }
+    }
+
+    /**
+     * Find the package roots again, fetch their dependencies and forget the import graphs, which resolve package
+     * imports by the package locations pub wrote. Failures are logged only, so the next change can fix them.
+     *
+     * @return the package roots, null if they could not be refreshed
+     */
+    private Set<File> refreshPackages() {
+        try {
+            final Set<File> dartPackageRoots = findDartPackageRoots();
+            processPubDependencies(dartPackageRoots);
+            invalidateImportGraphs();
+            testFiles.clear();
+            return dartPackageRoots;
+        } catch (final MojoExecutionException e) {
+            getLog().error(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Compile all stale dart files. Failures are logged only, so the next change can fix them.
+     *
+     * @return true if all dart files compiled
+     */
+    private boolean compile(final Set<File> dartPackageRoots, final BuildManifest manifest, final String dartVersion) {
+        try {
+            compileStaleSources(dartPackageRoots, manifest, dartVersion);
+            return true;
+        } catch (final MojoExecutionException e) {
+            getLog().error(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Wait for the next change and collect all changes following it until no change happened for
+     * {@link #debounce} ms.
+     */
+    private Set<File> awaitChanges(final WatchService watchService) throws InterruptedException, IOException {
+        final Set<File> changes = new TreeSet<>();
+        WatchKey key = watchService.take();
+        while (key != null) {
+            final Path directory = watchedDirectories.get(key);
+            for (final WatchEvent<?> event : key.pollEvents()) {
+                if (directory == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    continue;
+                }
+                final Path changed = directory.resolve((Path) event.context());
+                if (isIgnored(changed)) {
+                    continue;
+                }
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                    register(watchService, changed);
+                }
+                if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
+                    testFiles.clear();
+                }
+                changes.add(changed.toAbsolutePath().normalize().toFile());
+            }
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+            }
+            key = watchService.poll(debounce, TimeUnit.MILLISECONDS);
+        }
+        return changes;
+    }
+
+    private void register(final WatchService watchService, final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                throws IOException {
+                if (!dir.equals(root) && isIgnored(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watchedDirectories.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Directories not searched for packages, e.g. pub and compiler outputs, hidden files and editor backups don't
+     * affect the build.
+     */
+    static boolean isIgnored(final Path path) {
+        final String name = path.getFileName() == null ? "" : path.getFileName().toString();
+        return name.endsWith("~") || PubspecFinder.isPruned(path);
+    }
+
+    /**
+     * Whether the given changes add, change or remove a package: a changed pubspec, a new directory containing one
+     * or a removed package root.
+     */
+    static boolean affectsPackages(final Set<File> changes, final Set<File> dartPackageRoots) {
+        for (final File changed : changes) {
+            if (PubspecFinder.PUBSPEC.equals(changed.getName()) || new File(changed, PubspecFinder.PUBSPEC).isFile()
+                || dartPackageRoots.contains(changed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void logChanges(final Set<File> changes) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(changes.size()).append(" change").append(changes.size() == 1 ? "" : "s").append(":\n");
+        for (final File changed : changes) {
+            builder.append("\t").append(relativePath(changed)).append("\n");
+        }
+        getLog().info(builder.toString());
+    }
+
+    /**
+     * Run every test file which transitively imports a changed file. The test files are the ones the test goal runs
+     * by default, and their results are handled like the test goal does.
+     */
+    private void runAffectedTests(final Set<File> dartPackageRoots, final Set<File> changes) {
+        final List<File> affectedTests = new ArrayList<>();
+        for (final File packageRoot : dartPackageRoots) {
+            for (final File testFile : getTestFiles(packageRoot)) {
+                for (final File source : getImportGraph(packageRoot).getTransitiveSources(testFile)) {
+                    if (changes.contains(source)) {
+                        affectedTests.add(testFile);
+                        break;
+                    }
+                }
+            }
+        }
+        if (affectedTests.isEmpty()) {
+            getLog().info("No tests affected.");
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        final StreamConsumer output = new WriterStreamConsumer(new OutputStreamWriter(System.out));
+        final StreamConsumer error = new WriterStreamConsumer(new OutputStreamWriter(System.err));
+        final Commandline baseCommandline = createDartCommandline(isCheckedMode());
+        boolean success = true;
+        for (final File testFile : affectedTests) {
+            try {
+                final TestResult result = runTest(baseCommandline, testFile, output, error);
+                if (!result.isSuccessful()) {
+                    getLog().error(result.getStatus() + ": " + result.getSuite() + "\n" + result.getMessage());
+                    success = false;
+                }
+            } catch (final MojoExecutionException e) {
+                getLog().error("ERROR: " + relativePath(testFile) + "\n" + e.getMessage());
+                success = false;
+            }
+        }
+        getMetrics().phase("test", start);
+        if (success) {
+            getLog().info(affectedTests.size() + " affected test file" + (affectedTests.size() == 1 ? "" : "s")
+                + " passed.");
+        }
+    }
+
+    private Set<File> getTestFiles(final File packageRoot) {
+        Set<File> tests = testFiles.get(packageRoot);
+        if (tests == null) {
+            tests = new TreeSet<>();
+            for (final File test : TestMojo.scanForTests(packageRoot, TestMojo.DEFAULT_INCLUDES,
+                TestMojo.DEFAULT_EXCLUDES)) {
+                tests.add(test.toPath().toAbsolutePath().normalize().toFile());
+            }
+            testFiles.put(packageRoot, tests);
+        }
+        return tests;
+    }
+}
@@ -0,0 +1,135 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Content fingerprinted copies of files, e.g. <code>main.3f2a9c1b7d4e6f08.dart.js</code> next to
+ * <code>main.dart.js</code>, and the manifest mapping the logical names to them.
+ * <p/>
+ * The fingerprint is derived from the content only, so a file keeps its fingerprinted name as long as it doesn't
+ * change and can be cached forever. Outdated copies of a file are deleted.
+ */
+public class AssetManifest {
+
+    private static final int FINGERPRINT_LENGTH = 16;
+
+    private static final Pattern FINGERPRINTED_NAME =
+        Pattern.compile("([^.]+)\\.([0-9a-f]{" + FINGERPRINT_LENGTH + "})(\\..*)?");
+
+    private final File root;
+
+    private final FileHashes fileHashes = new FileHashes();
+
+    private final Map<String, String> assets = new TreeMap<>();
+
+    /**
+     * @param root the directory the paths in the manifest are relative to
+     */
+    public AssetManifest(final File root) {
+        this.root = root.getAbsoluteFile();
+    }
+
+    /**
+     * Whether the given file name is the name of a fingerprinted copy.
+     */
+    public static boolean isFingerprinted(final String name) {
+        return FINGERPRINTED_NAME.matcher(name).matches();
+    }
+
+    /**
+     * The name of the copy of a file with the given name and fingerprint, the fingerprint inserted before the first
+     * extension: <code>main.dart.js</code> becomes <code>main.&lt;fingerprint&gt;.dart.js</code>.
+     */
+    static String getFingerprintedName(final String name, final String fingerprint) {
+        final int extension = name.indexOf('.', 1);
+        return extension < 0 ? name + "." + fingerprint
+            : name.substring(0, extension) + "." + fingerprint + name.substring(extension);
+    }
+
+    /**
+     * Create the fingerprinted copy of the given file unless it exists, delete outdated copies and add the file to
+     * the manifest.
+     *
+     * @return the fingerprinted copy
+     */
+    public File add(final File file) throws IOException {
+        final String fingerprint = fileHashes.hash(file).substring(0, FINGERPRINT_LENGTH);
+        final File copy = new File(file.getParentFile(), getFingerprintedName(file.getName(), fingerprint));
+        if (!copy.isFile() || copy.length() != file.length()) {
+            final File temp = Files.createTempFile(file.getParentFile().toPath(), copy.getName(), ".tmp").toFile();
+            try {
+                Files.copy(file.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                FileUtil.replaceAtomically(temp, copy);
+            } finally {
+                Files.deleteIfExists(temp.toPath());
+            }
+        }
+        deleteOutdatedCopies(file, copy);
+        synchronized (assets) {
+            assets.put(relativize(file), relativize(copy));
+        }
+        return copy;
+    }
+
+    public Map<String, String> getAssets() {
+        synchronized (assets) {
+            return new TreeMap<>(assets);
+        }
+    }
+
+    /**
+     * Write the manifest as a json object mapping the logical paths to the fingerprinted ones. The file is replaced
+     * atomically where the file system supports it.
+     */
+    public void save(final File file) throws IOException {
+        final StringBuilder json = new StringBuilder("{");
+        String separator = "\n";
+        for (final Map.Entry<String, String> asset : getAssets().entrySet()) {
+            json.append(separator).append("  ").append(Json.quote(asset.getKey())).append(": ")
+                .append(Json.quote(asset.getValue()));
+            separator = ",\n";
+        }
+        json.append("\n}\n");
+
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory '" + parent.getAbsolutePath() + "'.");
+        }
+        final File temp = new File(parent, file.getName() + ".tmp");
+        try (Writer out = new OutputStreamWriter(Files.newOutputStream(temp.toPath()), StandardCharsets.UTF_8)) {
+            out.write(json.toString());
+        }
+        FileUtil.replaceAtomically(temp, file);
+    }
+
+    private void deleteOutdatedCopies(final File file, final File copy) throws IOException {
+        final File[] copies = file.getParentFile().listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File candidate) {
+                final Matcher matcher = FINGERPRINTED_NAME.matcher(candidate.getName());
+                return matcher.matches() && !candidate.equals(copy) && file.getName()
+                    .equals(matcher.group(1) + (matcher.group(3) == null ? "" : matcher.group(3)));
+            }
+        });
+        if (copies != null) {
+            for (final File outdated : copies) {
+                Files.deleteIfExists(outdated.toPath());
+            }
+        }
+    }
+
+    private String relativize(final File file) {
+        return root.toPath().relativize(file.getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/');
+    }
+}
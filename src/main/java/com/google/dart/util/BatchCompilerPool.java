@@ -0,0 +1,308 @@
+package com.google.dart.util;
+
+import com.google.common.base.Joiner;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of long-lived compiler processes running in batch mode (<code>dart2js --batch</code>), so the vm startup
+ * and the loading of the compiler are paid once per worker instead of once per compile.
+ * <p/>
+ * A batch compiler reads the arguments of one compile per line from stdin. When the compile is done it prints
+ * <code>&gt;&gt;&gt; TEST OK</code>, <code>FAIL</code> or <code>CRASH</code> to stdout and
+ * <code>&gt;&gt;&gt; EOF STDERR</code> to stderr. Arguments are separated by spaces, so they must not contain any.
+ * <p/>
+ * Workers are replaced after a number of compiles or when their resident memory exceeds a limit, as the compiler
+ * retains memory between compiles.
+ * <p/>
+ * Every worker holds a permit of the {@link ProcessScheduler} as long as it lives, idle or not, so the workers count
+ * against the process limit. A worker going idle while other modules wait for a permit is stopped to hand its permit
+ * over.
+ */
+public class BatchCompilerPool {
+
+    private static final String MARKER = ">>> ";
+
+    private static final String MARKER_TEST = ">>> TEST ";
+
+    private static final String MARKER_EOF_STDERR = ">>> EOF STDERR";
+
+    /**
+     * How long a thread waits for a permit before it looks for an idle worker again.
+     */
+    private static final long PERMIT_POLL_MILLIS = 50;
+
+    /**
+     * The exit code reported for a compile which crashed the compiler.
+     */
+    public static final int EXIT_CODE_CRASH = 253;
+
+    private final Commandline workerCommandline;
+
+    private final int maxCompiles;
+
+    private final long maxMemoryBytes;
+
+    private final ProcessScheduler scheduler;
+
+    private final BlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<>();
+
+    private final List<Worker> workers = new ArrayList<>();
+
+    private boolean closed;
+
+    private int started;
+
+    private int recycled;
+
+    /**
+     * @param workerCommandline the command line starting a batch compiler
+     * @param maxCompiles       the number of compiles after which a worker is replaced, unlimited if not positive
+     * @param maxMemoryBytes    the resident memory after which a worker is replaced, unlimited if not positive
+     * @param scheduler         the jvm wide process limit, each worker takes a permit, null for none
+     */
+    public BatchCompilerPool(final Commandline workerCommandline, final int maxCompiles, final long maxMemoryBytes,
+        final ProcessScheduler scheduler) {
+        this.workerCommandline = workerCommandline;
+        this.maxCompiles = maxCompiles;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Compile with the given arguments on an idle worker, starting a new one if none is idle. The pool never has
+     * more workers than threads calling this method at the same time.
+     *
+     * @return 0 if the compile succeeded, 1 if it failed, {@link #EXIT_CODE_CRASH} if the compiler crashed
+     */
+    public int compile(final List<String> arguments, final StreamConsumer out, final StreamConsumer err)
+        throws CommandLineException, InterruptedException {
+        final Worker worker = takeWorker();
+        boolean reusable = false;
+        try {
+            final int exitCode = worker.compile(Joiner.on(' ').join(arguments), out, err);
+            reusable = worker.isReusable();
+            return exitCode;
+        } finally {
+            checkIn(worker, reusable);
+        }
+    }
+
+    /**
+     * An idle worker, or a new one as soon as a permit is granted. Waiting for the permit is interrupted now and then
+     * to look for a worker gone idle meanwhile, as the permit might be held by that very worker.
+     */
+    private Worker takeWorker() throws CommandLineException, InterruptedException {
+        while (true) {
+            final Worker idle = idleWorkers.poll();
+            if (idle != null) {
+                return idle;
+            }
+            if (scheduler == null || scheduler.tryAcquire(PERMIT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return startWorker();
+            }
+        }
+    }
+
+    private synchronized Worker startWorker() throws CommandLineException {
+        boolean started = false;
+        try {
+            if (closed) {
+                throw new CommandLineException("Compiler pool closed.");
+            }
+            final Worker worker = new Worker(workerCommandline.execute());
+            workers.add(worker);
+            this.started++;
+            started = true;
+            return worker;
+        } finally {
+            if (!started && scheduler != null) {
+                scheduler.release();
+            }
+        }
+    }
+
+    /**
+     * Park a worker done compiling for the next compile, or stop it if it is worn out, the pool is closed or other
+     * modules wait for its permit.
+     */
+    private synchronized void checkIn(final Worker worker, final boolean reusable) {
+        if (reusable && !closed && (scheduler == null || scheduler.getOthersWaitingCount() == 0)) {
+            idleWorkers.add(worker);
+            return;
+        }
+        if (workers.remove(worker) && !reusable) {
+            recycled++;
+        }
+        stop(worker);
+    }
+
+    private void stop(final Worker worker) {
+        worker.destroy();
+        if (!worker.stopped) {
+            worker.stopped = true;
+            if (scheduler != null) {
+                scheduler.release();
+            }
+        }
+    }
+
+    /**
+     * Stop all workers, including those still compiling.
+     */
+    public synchronized void close() {
+        closed = true;
+        for (final Worker worker : workers) {
+            stop(worker);
+        }
+        workers.clear();
+        idleWorkers.clear();
+    }
+
+    public synchronized String getStatistics() {
+        return started + " compiler" + (started == 1 ? "" : "s") + " started, " + recycled + " replaced";
+    }
+
+    private class Worker {
+
+        private final Process process;
+
+        private final OutputStream stdin;
+
+        private volatile StreamConsumer out;
+
+        private volatile StreamConsumer err;
+
+        private volatile CountDownLatch done;
+
+        private volatile String result;
+
+        private volatile boolean dead;
+
+        private int compiles;
+
+        /**
+         * Whether the permit of this worker was released, guarded by the pool.
+         */
+        private boolean stopped;
+
+        private Worker(final Process process) {
+            this.process = process;
+            this.stdin = process.getOutputStream();
+            startReader(process.getInputStream(), false);
+            startReader(process.getErrorStream(), true);
+        }
+
+        private int compile(final String argumentLine, final StreamConsumer out, final StreamConsumer err)
+            throws CommandLineException, InterruptedException {
+            this.out = out;
+            this.err = err;
+            this.result = null;
+            this.done = new CountDownLatch(2);
+            compiles++;
+            if (dead) {
+                throw new CommandLineException("The batch compiler died.");
+            }
+            try {
+                stdin.write((argumentLine + "\n").getBytes(StandardCharsets.UTF_8));
+                stdin.flush();
+            } catch (final IOException e) {
+                dead = true;
+                throw new CommandLineException("Unable to pass a job to the batch compiler.", e);
+            }
+            done.await();
+            if (result == null) {
+                dead = true;
+                throw new CommandLineException("The batch compiler died.");
+            }
+            switch (result) {
+                case "OK":
+                    return 0;
+                case "FAIL":
+                    return 1;
+                default:
+                    dead = true;
+                    return EXIT_CODE_CRASH;
+            }
+        }
+
+        private boolean isReusable() {
+            if (dead || (maxCompiles > 0 && compiles >= maxCompiles)) {
+                return false;
+            }
+            if (maxMemoryBytes > 0) {
+                final long memory = SystemResources.getResidentSetSize(process);
+                return memory == SystemResources.UNKNOWN || memory < maxMemoryBytes;
+            }
+            return true;
+        }
+
+        private void startReader(final InputStream in, final boolean stderr) {
+            final Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try (BufferedReader lines = new BufferedReader(
+                        new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                        String line;
+                        while ((line = lines.readLine()) != null) {
+                            consume(line, stderr);
+                        }
+                    } catch (final IOException e) {
+                        // the worker was destroyed
+                    } finally {
+                        dead = true;
+                        final CountDownLatch latch = done;
+                        if (latch != null) {
+                            latch.countDown();
+                            latch.countDown();
+                        }
+                    }
+                }
+            }, "dart2js-batch-" + (stderr ? "err" : "out"));
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void consume(final String line, final boolean stderr) {
+            if (line.startsWith(MARKER)) {
+                final CountDownLatch latch = done;
+                if (!stderr && line.startsWith(MARKER_TEST)) {
+                    result = line.substring(MARKER_TEST.length()).trim();
+                } else if (!stderr || !line.startsWith(MARKER_EOF_STDERR)) {
+                    return;
+                }
+                if (latch != null) {
+                    latch.countDown();
+                }
+                return;
+            }
+            final StreamConsumer consumer = stderr ? err : out;
+            if (consumer != null) {
+                consumer.consumeLine(line);
+            }
+        }
+
+        private void destroy() {
+            try {
+                stdin.close();
+            } catch (final IOException e) {
+                // destroyed anyway
+            }
+            ProcessTracker.destroyTree(process);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.google.dart.util;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local, content addressed cache for compiler outputs.
+ * <p/>
+ * Every entry is a directory named by its key holding the cached artifacts. Entries are published by an atomic
+ * rename, so concurrent builds never observe half written entries. The last modification time of an entry
+ * directory is its last access; if the cache grows beyond its maximum size the least recently used entries are
+ * evicted.
+ */
+public class BuildCache {
+
+    private final File directory;
+
+    private final long maxSize;
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private final AtomicInteger stores = new AtomicInteger();
+
+    private final AtomicLong restoredBytes = new AtomicLong();
+
+    private long size = -1;
+
+    /**
+     * @param directory the cache directory, created on demand
+     * @param maxSize   the maximum size of all entries in bytes
+     */
+    public BuildCache(final File directory, final long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Restore the artifacts cached under the given key into the target directory. An entry evicted by another build
+     * while it is restored is a miss; the artifacts restored so far are deleted. Artifacts are hard linked where the
+     * file system supports it, so the restored files must be replaced, never changed in place.
+     *
+     * @return true if the key was found and all artifacts were restored
+     */
+    public boolean restore(final String key, final File targetDirectory) throws IOException {
+        final File entry = new File(directory, key);
+        final File[] artifacts = entry.listFiles();
+        if (artifacts == null || artifacts.length == 0) {
+            misses.incrementAndGet();
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        entry.setLastModified(now);
+        if (!targetDirectory.isDirectory() && !targetDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory '" + targetDirectory.getAbsolutePath() + "'.");
+        }
+        final List<File> restored = new ArrayList<>();
+        long bytes = 0;
+        try {
+            for (final File artifact : artifacts) {
+                final File target = new File(targetDirectory, artifact.getName());
+                Files.deleteIfExists(target.toPath());
+                try {
+                    Files.createLink(target.toPath(), artifact.toPath());
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(artifact.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                restored.add(target);
+                target.setLastModified(now);
+                bytes += artifact.length();
+            }
+        } catch (final IOException e) {
+            for (final File target : restored) {
+                Files.deleteIfExists(target.toPath());
+            }
+            misses.incrementAndGet();
+            return false;
+        }
+        restoredBytes.addAndGet(bytes);
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Store copies of the given artifacts under the given key. An already existing entry is kept.
+     */
+    public void store(final String key, final Collection<File> artifacts) throws IOException {
+        final File entry = new File(directory, key);
+        if (entry.isDirectory() || artifacts.isEmpty()) {
+            return;
+        }
+        final File staging = new File(directory, key + ".tmp-" + UUID.randomUUID());
+        if (!staging.mkdirs()) {
+            throw new IOException("Unable to create directory '" + staging.getAbsolutePath() + "'.");
+        }
+        long entrySize = 0;
+        try {
+            for (final File artifact : artifacts) {
+                Files.copy(artifact.toPath(), new File(staging, artifact.getName()).toPath());
+                entrySize += artifact.length();
+            }
+            if (!staging.renameTo(entry)) {
+                // another build stored the same key in the meantime
+                return;
+            }
+        } finally {
+            FileUtils.deleteQuietly(staging);
+        }
+        stores.incrementAndGet();
+        evict(entrySize);
+    }
+
+    private synchronized void evict(final long addedSize) {
+        if (size < 0) {
+            size = sizeOfEntries();
+        } else {
+            size += addedSize;
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        final File[] entries = directory.listFiles();
+        if (entries == null) {
+            return;
+        }
+        final List<File> lru = new ArrayList<>(Arrays.asList(entries));
+        Collections.sort(lru, new Comparator<File>() {
+            @Override
+            public int compare(final File f1, final File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (final File entry : lru) {
+            if (size <= maxSize) {
+                break;
+            }
+            if (entry.getName().contains(".tmp-")) {
+                continue;
+            }
+            try {
+                final long entrySize = FileUtils.sizeOf(entry);
+                if (FileUtils.deleteQuietly(entry)) {
+                    size -= entrySize;
+                }
+            } catch (final IllegalArgumentException e) {
+                // evicted by another build in the meantime
+            }
+        }
+    }
+
+    /**
+     * The size of all published entries. Staging directories and entries deleted by other builds while they are
+     * measured are not counted.
+     */
+    private long sizeOfEntries() {
+        final File[] entries = directory.listFiles();
+        long total = 0;
+        if (entries != null) {
+            for (final File entry : entries) {
+                if (entry.getName().contains(".tmp-")) {
+                    continue;
+                }
+                try {
+                    total += FileUtils.sizeOf(entry);
+                } catch (final IllegalArgumentException e) {
+                    // evicted by another build in the meantime
+                }
+            }
+        }
+        return total;
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    public int getStores() {
+        return stores.get();
+    }
+
+    public long getRestoredBytes() {
+        return restoredBytes.get();
+    }
+
+    /**
+     * A one line summary of the hit and miss statistics.
+     */
+    public String getStatistics() {
+        final int lookups = getHits() + getMisses();
+        return getHits() + " hits, " + getMisses() + " misses"
+            + (lookups > 0 ? " (" + (100 * getHits() / lookups) + "% hit rate)" : "")
+            + ", " + getStores() + " stored, "
+            + FileUtils.byteCountToDisplaySize(getRestoredBytes()) + " restored";
+    }
+}
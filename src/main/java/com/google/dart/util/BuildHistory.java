@@ -0,0 +1,131 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Measurements of previous builds, e.g. the durations of test files or the peak memory of compiler runs, persisted
+ * between builds.
+ * <p/>
+ * Keys are paths relative to the basedir, so a history can be shared between workspaces and CI agents.
+ */
+public class BuildHistory {
+
+    private final File file;
+
+    private final Map<String, Long> values = new HashMap<>();
+
+    private BuildHistory(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Load the measurements from the given file. A missing or unreadable file results in an empty history.
+     */
+    public static BuildHistory load(final File file) {
+        final BuildHistory history = new BuildHistory(file);
+        if (file != null && file.isFile()) {
+            final Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+                for (final String key : properties.stringPropertyNames()) {
+                    history.values.put(key, Long.parseLong(properties.getProperty(key)));
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                history.values.clear();
+            }
+        }
+        return history;
+    }
+
+    /**
+     * An empty history, replacing the given file when saved.
+     */
+    public static BuildHistory create(final File file) {
+        return new BuildHistory(file);
+    }
+
+    /**
+     * Load the measurements from the given file or from all properties files of the given directory, in the order
+     * of their names. The result is read only.
+     */
+    public static BuildHistory merge(final File fileOrDirectory) {
+        final BuildHistory merged = new BuildHistory(null);
+        if (fileOrDirectory == null) {
+            return merged;
+        }
+        final File[] files = fileOrDirectory.isDirectory() ? fileOrDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.isFile() && file.getName().endsWith(".properties");
+            }
+        }) : new File[] {fileOrDirectory};
+        if (files != null) {
+            Arrays.sort(files);
+            for (final File file : files) {
+                merged.values.putAll(load(file).values);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * The last recorded value, null if unknown.
+     */
+    public synchronized Long get(final String key) {
+        return values.get(key);
+    }
+
+    public synchronized void put(final String key, final long value) {
+        values.put(key, value);
+    }
+
+    public synchronized boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /**
+     * The average of all recorded values, 0 if there are none.
+     */
+    public synchronized long getAverage() {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        long sum = 0;
+        for (final Long value : values.values()) {
+            sum += value;
+        }
+        return sum / values.size();
+    }
+
+    /**
+     * Write the measurements, see {@link FileUtil#replaceAtomically}.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            throw new IllegalStateException("A merged history is read only.");
+        }
+        final Properties properties = new Properties();
+        for (final Map.Entry<String, Long> value : values.entrySet()) {
+            properties.setProperty(value.getKey(), String.valueOf(value.getValue()));
+        }
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory '" + parent.getAbsolutePath() + "'.");
+        }
+        final File temp = new File(parent, file.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            properties.store(out, null);
+        }
+        FileUtil.replaceAtomically(temp, file);
+    }
+}
@@ -0,0 +1,177 @@
+package com.google.dart.util;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A persistent record of how every output of a build was produced.
+ * <p/>
+ * For every output the manifest stores the dart-sdk version, the complete argument vector and the content hash of
+ * every source it was built from. An output is up to date if all of them are unchanged, independent of file
+ * times. The manifest also keeps the content hashes of all sources with their size and last modification time,
+ * so unchanged sources are not read again on the next build.
+ */
+public class BuildManifest {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+
+    private final FileHashes fileHashes = new FileHashes();
+
+    private final Map<String, Record> records = new HashMap<>();
+
+    private BuildManifest(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Load the manifest from the given file. A missing or unreadable manifest results in an empty manifest, so
+     * all outputs are considered stale.
+     */
+    @SuppressWarnings("unchecked")
+    public static BuildManifest load(final File file) {
+        final BuildManifest manifest = new BuildManifest(file);
+        if (!file.isFile()) {
+            return manifest;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            final Map<String, Object> data = (Map<String, Object>) new Yaml().load(in);
+            if (data == null || !Integer.valueOf(FORMAT_VERSION).equals(data.get("version"))) {
+                return manifest;
+            }
+            final Map<String, Map<String, Object>> files = (Map<String, Map<String, Object>>) data.get("files");
+            if (files != null) {
+                for (final Map.Entry<String, Map<String, Object>> entry : files.entrySet()) {
+                    manifest.fileHashes.seed(new File(entry.getKey()),
+                        ((Number) entry.getValue().get("length")).longValue(),
+                        ((Number) entry.getValue().get("lastModified")).longValue(),
+                        (String) entry.getValue().get("hash"));
+                }
+            }
+            final Map<String, Map<String, Object>> outputs = (Map<String, Map<String, Object>>) data.get("outputs");
+            if (outputs != null) {
+                for (final Map.Entry<String, Map<String, Object>> entry : outputs.entrySet()) {
+                    manifest.records.put(entry.getKey(), new Record(
+                        (String) entry.getValue().get("sdkVersion"),
+                        (List<String>) entry.getValue().get("arguments"),
+                        (Map<String, String>) entry.getValue().get("sources")));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            manifest.records.clear();
+        }
+        return manifest;
+    }
+
+    /**
+     * The content hashes known to this manifest.
+     */
+    public FileHashes getFileHashes() {
+        return fileHashes;
+    }
+
+    /**
+     * Check whether the given output was built by the same sdk, with the same arguments and from sources with the
+     * same content.
+     */
+    public synchronized boolean isUpToDate(final String output, final String sdkVersion, final List<String> arguments,
+        final Map<String, String> sourceHashes) {
+        final Record record = records.get(output);
+        return record != null
+            && sdkVersion.equals(record.sdkVersion)
+            && arguments.equals(record.arguments)
+            && sourceHashes.equals(record.sourceHashes);
+    }
+
+    /**
+     * Record how the given output was built.
+     */
+    public synchronized void record(final String output, final String sdkVersion, final List<String> arguments,
+        final Map<String, String> sourceHashes) {
+        records.put(output, new Record(sdkVersion, arguments, sourceHashes));
+    }
+
+    /**
+     * Forget the given output so it is considered stale.
+     */
+    public synchronized void remove(final String output) {
+        records.remove(output);
+    }
+
+    /**
+     * Forget all outputs.
+     */
+    public synchronized void clear() {
+        records.clear();
+    }
+
+    /**
+     * Write the manifest, see {@link FileUtil#replaceAtomically}.
+     */
+    public synchronized void save() throws IOException {
+        final Map<String, Object> files = new TreeMap<>();
+        for (final Map.Entry<File, FileHashes.Entry> entry : fileHashes.getEntries().entrySet()) {
+            final Map<String, Object> hash = new LinkedHashMap<>();
+            hash.put("length", entry.getValue().getLength());
+            hash.put("lastModified", entry.getValue().getLastModified());
+            hash.put("hash", entry.getValue().getHash());
+            files.put(entry.getKey().getAbsolutePath(), hash);
+        }
+        final Map<String, Object> outputs = new TreeMap<>();
+        for (final Map.Entry<String, Record> entry : records.entrySet()) {
+            final Map<String, Object> record = new LinkedHashMap<>();
+            record.put("sdkVersion", entry.getValue().sdkVersion);
+            record.put("arguments", entry.getValue().arguments);
+            record.put("sources", entry.getValue().sourceHashes);
+            outputs.put(entry.getKey(), record);
+        }
+        final Map<String, Object> data = new LinkedHashMap<>();
+        data.put("version", FORMAT_VERSION);
+        data.put("files", files);
+        data.put("outputs", outputs);
+
+        final DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory '" + parent.getAbsolutePath() + "'.");
+        }
+        final File temp = new File(parent, file.getName() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            new Yaml(options).dump(data, writer);
+        }
+        FileUtil.replaceAtomically(temp, file);
+    }
+
+    private static class Record {
+
+        private final String sdkVersion;
+
+        private final List<String> arguments;
+
+        private final Map<String, String> sourceHashes;
+
+        private Record(final String sdkVersion, final List<String> arguments, final Map<String, String> sourceHashes) {
+            this.sdkVersion = sdkVersion;
+            this.arguments = new ArrayList<>(arguments);
+            this.sourceHashes = new TreeMap<>(sourceHashes);
+        }
+    }
+}
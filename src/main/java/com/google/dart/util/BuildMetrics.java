@@ -0,0 +1,207 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The timings of one execution of a goal: the duration of every phase, e.g. package discovery or pub, and of every
+ * subprocess with its exit code and output size. Steps skipped as up to date are recorded as well, so a dashboard
+ * can tell a fast build from a build which did nothing.
+ */
+public class BuildMetrics {
+
+    private static final int SLOWEST_PROCESSES = 3;
+
+    private final long started = System.currentTimeMillis();
+
+    private final List<Phase> phases = new ArrayList<>();
+
+    private final List<Process> processes = new ArrayList<>();
+
+    /**
+     * Record a phase started at the given time and ending now.
+     */
+    public synchronized void phase(final String name, final long startMillis) {
+        phases.add(new Phase(name, System.currentTimeMillis() - startMillis));
+    }
+
+    /**
+     * Record a subprocess which ran.
+     *
+     * @param exitCode    the exit code, null if the process could not be started or was cancelled
+     * @param outputBytes the size of its output, e.g. the characters it logged or the files it generated
+     */
+    public synchronized void process(final String phase, final String name, final long durationMillis,
+        final Integer exitCode, final long outputBytes) {
+        processes.add(new Process(phase, name, durationMillis, exitCode, outputBytes, null));
+    }
+
+    /**
+     * Record a subprocess which did not need to run.
+     *
+     * @param reason why, e.g. <code>up to date</code>
+     */
+    public synchronized void skipped(final String phase, final String name, final String reason) {
+        processes.add(new Process(phase, name, 0, null, 0, reason));
+    }
+
+    /**
+     * Write the metrics as json, see {@link FileUtil#replaceAtomically}.
+     *
+     * @param goal the goal the metrics were recorded by
+     */
+    public synchronized void save(final File file, final String goal) throws IOException {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"goal\": ").append(Json.quote(goal)).append(",\n");
+        json.append("  \"started\": ").append(started).append(",\n");
+        json.append("  \"durationMillis\": ").append(System.currentTimeMillis() - started).append(",\n");
+        json.append("  \"phases\": [");
+        String separator = "\n";
+        for (final Phase phase : phases) {
+            json.append(separator).append("    {\"name\": ").append(Json.quote(phase.name))
+                .append(", \"durationMillis\": ").append(phase.durationMillis).append("}");
+            separator = ",\n";
+        }
+        json.append(phases.isEmpty() ? "],\n" : "\n  ],\n");
+        json.append("  \"processes\": [");
+        separator = "\n";
+        for (final Process process : processes) {
+            json.append(separator).append("    {\"phase\": ").append(Json.quote(process.phase))
+                .append(", \"name\": ").append(Json.quote(process.name))
+                .append(", \"durationMillis\": ").append(process.durationMillis)
+                .append(", \"exitCode\": ").append(process.exitCode)
+                .append(", \"outputBytes\": ").append(process.outputBytes)
+                .append(", \"skipped\": ").append(process.isSkipped())
+                .append(", \"reason\": ").append(Json.quote(process.reason)).append("}");
+            separator = ",\n";
+        }
+        json.append(processes.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory '" + parent.getAbsolutePath() + "'.");
+        }
+        final File temp = new File(parent, file.getName() + ".tmp");
+        try (Writer out = new OutputStreamWriter(Files.newOutputStream(temp.toPath()), StandardCharsets.UTF_8)) {
+            out.write(json.toString());
+        }
+        FileUtil.replaceAtomically(temp, file);
+    }
+
+    /**
+     * A table with one row per phase: its duration, the processes run, skipped and failed and their summed
+     * duration, followed by the slowest processes.
+     */
+    public synchronized List<String> summarize() {
+        final Map<String, long[]> rows = new LinkedHashMap<>();
+        for (final Phase phase : phases) {
+            row(rows, phase.name)[0] += phase.durationMillis;
+        }
+        for (final Process process : processes) {
+            final long[] row = row(rows, process.phase);
+            if (process.isSkipped()) {
+                row[2]++;
+            } else {
+                row[1]++;
+                row[4] += process.durationMillis;
+                if (process.exitCode == null || process.exitCode != 0) {
+                    row[3]++;
+                }
+            }
+        }
+
+        final List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ENGLISH, "%-12s %9s %6s %8s %7s %11s", "phase", "time", "run", "skipped",
+            "failed", "process time"));
+        for (final Map.Entry<String, long[]> row : rows.entrySet()) {
+            final long[] values = row.getValue();
+            lines.add(String.format(Locale.ENGLISH, "%-12s %9s %6d %8d %7d %11s", row.getKey(),
+                formatDuration(values[0]), values[1], values[2], values[3], formatDuration(values[4])));
+        }
+
+        final List<Process> slowest = new ArrayList<>();
+        for (final Process process : processes) {
+            if (!process.isSkipped()) {
+                slowest.add(process);
+            }
+        }
+        Collections.sort(slowest, new Comparator<Process>() {
+            @Override
+            public int compare(final Process p1, final Process p2) {
+                return Long.compare(p2.durationMillis, p1.durationMillis);
+            }
+        });
+        for (final Process process : slowest.subList(0, Math.min(SLOWEST_PROCESSES, slowest.size()))) {
+            lines.add("slowest " + process.phase + ": " + process.name + " " + formatDuration(process.durationMillis));
+        }
+        return lines;
+    }
+
+    private static long[] row(final Map<String, long[]> rows, final String phase) {
+        long[] row = rows.get(phase);
+        if (row == null) {
+            // phase time, processes run, skipped, failed, process time
+            row = new long[5];
+            rows.put(phase, row);
+        }
+        return row;
+    }
+
+    private static String formatDuration(final long millis) {
+        return millis < 1000 ? millis + "ms" : String.format(Locale.ENGLISH, "%.1fs", millis / 1000.0);
+    }
+
+    private static class Phase {
+
+        private final String name;
+
+        private final long durationMillis;
+
+        private Phase(final String name, final long durationMillis) {
+            this.name = name;
+            this.durationMillis = durationMillis;
+        }
+    }
+
+    private static class Process {
+
+        private final String phase;
+
+        private final String name;
+
+        private final long durationMillis;
+
+        private final Integer exitCode;
+
+        private final long outputBytes;
+
+        private final String reason;
+
+        private Process(final String phase, final String name, final long durationMillis, final Integer exitCode,
+            final long outputBytes, final String reason) {
+            this.phase = phase;
+            this.name = name;
+            this.durationMillis = durationMillis;
+            this.exitCode = exitCode;
+            this.outputBytes = outputBytes;
+            this.reason = reason;
+        }
+
+        private boolean isSkipped() {
+            return reason != null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.google.dart.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A compression format files are precompressed with, e.g. for a web server serving <code>main.dart.js.gz</code>
+ * instead of compressing <code>main.dart.js</code> on every request.
+ * <p/>
+ * Implementations need a public no-arg constructor and must be safe to use from several threads at once.
+ */
+public interface CompressionCodec {
+
+    /**
+     * The extension of the compressed files, without the dot, e.g. <code>gz</code>.
+     */
+    String getExtension();
+
+    /**
+     * A stream compressing everything written to it into the given stream. Closing it closes the given stream.
+     */
+    OutputStream compress(OutputStream out) throws IOException;
+}
@@ -0,0 +1,209 @@
+package com.google.dart.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The import graph of a dart package root.
+ * <p/>
+ * Dart sources are scanned lazily for <code>import</code>, <code>export</code> and <code>part</code> directives.
+ * Relative URIs are resolved against the importing file, <code>package:</code> URIs against the own
+ * <code>lib</code> directory, the <code>packages</code> directory or the <code>.packages</code> file of the
+ * package root. <code>dart:</code> URIs and unresolvable URIs are ignored.
+ */
+public class DartImportGraph {
+
+    private static final Pattern COMMENTS = Pattern.compile("//[^\\n]*|/\\*.*?\\*/", Pattern.DOTALL);
+
+    private static final Pattern DIRECTIVE =
+        Pattern.compile("\\b(?:import|export|part)\\s+(['\"])(.*?)\\1([^;]*);", Pattern.DOTALL);
+
+    private static final Pattern CONDITIONAL_URI =
+        Pattern.compile("\\bif\\s*\\([^)]*\\)\\s*(['\"])(.*?)\\1", Pattern.DOTALL);
+
+    private static final String PACKAGE_SCHEME = "package:";
+
+    private static final String DART_SCHEME = "dart:";
+
+    private final File packageRoot;
+
+    private final String packageName;
+
+    private final Map<String, File> packageLocations;
+
+    private final Map<File, Set<File>> dependencies = new HashMap<>();
+
+    public DartImportGraph(final File packageRoot) {
+        this.packageRoot = packageRoot.getAbsoluteFile();
+        this.packageName = readPackageName(this.packageRoot);
+        this.packageLocations = readPackagesFile(this.packageRoot);
+    }
+
+    public File getPackageRoot() {
+        return packageRoot;
+    }
+
+    /**
+     * All dart sources the given file depends on, including the file itself.
+     */
+    public Set<File> getTransitiveSources(final File dartFile) {
+        final Set<File> visited = new LinkedHashSet<>();
+        final Deque<File> queue = new ArrayDeque<>();
+        queue.add(normalize(dartFile));
+        while (!queue.isEmpty()) {
+            final File file = queue.poll();
+            if (visited.add(file)) {
+                for (final File dependency : getDirectDependencies(file)) {
+                    if (!visited.contains(dependency)) {
+                        queue.add(dependency);
+                    }
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * The dart sources directly imported, exported or included by the given file.
+     */
+    public synchronized Set<File> getDirectDependencies(final File dartFile) {
+        final File file = normalize(dartFile);
+        Set<File> result = dependencies.get(file);
+        if (result == null) {
+            result = new LinkedHashSet<>();
+            for (final String uri : parseDirectives(read(file))) {
+                final File dependency = resolve(file, uri);
+                if (dependency != null && dependency.isFile()) {
+                    result.add(dependency);
+                }
+            }
+            dependencies.put(file, result);
+        }
+        return result;
+    }
+
+    /**
+     * Forget the directives of the given file so they are scanned again on next access.
+     */
+    public synchronized void invalidate(final File dartFile) {
+        dependencies.remove(normalize(dartFile));
+    }
+
+    File resolve(final File importingFile, final String uri) {
+        if (uri.startsWith(DART_SCHEME)) {
+            return null;
+        }
+        if (uri.startsWith(PACKAGE_SCHEME)) {
+            return resolvePackageUri(uri.substring(PACKAGE_SCHEME.length()));
+        }
+        try {
+            final URI parsed = new URI(uri);
+            if (parsed.isAbsolute()) {
+                return "file".equals(parsed.getScheme()) ? normalize(new File(parsed)) : null;
+            }
+            return normalize(new File(importingFile.getParentFile(), parsed.getPath()));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private File resolvePackageUri(final String path) {
+        final int slash = path.indexOf('/');
+        if (slash <= 0) {
+            return null;
+        }
+        final String name = path.substring(0, slash);
+        final String file = path.substring(slash + 1);
+
+        if (name.equals(packageName)) {
+            return normalize(new File(new File(packageRoot, "lib"), file));
+        }
+        final File packagesDirectory = new File(packageRoot, "packages");
+        if (packagesDirectory.isDirectory()) {
+            return normalize(new File(new File(packagesDirectory, name), file));
+        }
+        final File location = packageLocations.get(name);
+        if (location != null) {
+            return normalize(new File(location, file));
+        }
+        return null;
+    }
+
+    static List<String> parseDirectives(final CharSequence source) {
+        final String code = COMMENTS.matcher(source).replaceAll(" ");
+        final List<String> uris = new ArrayList<>();
+        final Matcher directive = DIRECTIVE.matcher(code);
+        while (directive.find()) {
+            uris.add(directive.group(2));
+            final Matcher conditional = CONDITIONAL_URI.matcher(directive.group(3));
+            while (conditional.find()) {
+                uris.add(conditional.group(2));
+            }
+        }
+        return uris;
+    }
+
+    private static String read(final File file) {
+        try {
+            return Files.toString(file, Charsets.UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static String readPackageName(final File packageRoot) {
+        final File pubspec = new File(packageRoot, "pubspec.yaml");
+        if (!pubspec.isFile()) {
+            return null;
+        }
+        try {
+            return new Pub(pubspec).getName();
+        } catch (FileNotFoundException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, File> readPackagesFile(final File packageRoot) {
+        final File packagesFile = new File(packageRoot, ".packages");
+        if (!packagesFile.isFile()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, File> locations = new HashMap<>();
+        try {
+            for (final String line : Files.readLines(packagesFile, Charsets.UTF_8)) {
+                final int colon = line.indexOf(':');
+                if (line.startsWith("#") || colon <= 0) {
+                    continue;
+                }
+                final URI location = new URI(line.substring(colon + 1));
+                locations.put(line.substring(0, colon), location.isAbsolute()
+                    ? new File(location)
+                    : new File(packageRoot, location.getPath()));
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            return Collections.emptyMap();
+        }
+        return locations;
+    }
+
+    private static File normalize(final File file) {
+        return file.getAbsoluteFile().toPath().normalize().toFile();
+    }
+}
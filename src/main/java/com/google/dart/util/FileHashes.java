@@ -0,0 +1,87 @@
+package com.google.dart.util;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Content hashes of files.
+ * <p/>
+ * A hash is computed once and reused as long as size and last modification time of the file are unchanged, so
+ * sources shared by many dart entry points are read only once per build. Hashes can be seeded from a previous
+ * build, e.g. a {@link BuildManifest}, so unchanged files are not read at all.
+ */
+public class FileHashes {
+
+    private final ConcurrentMap<File, Entry> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * The hex encoded sha-256 of the content of the given file.
+     */
+    public String hash(final File file) throws IOException {
+        final File key = file.getAbsoluteFile();
+        final long length = key.length();
+        final long lastModified = key.lastModified();
+        final Entry cached = hashes.get(key);
+        if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+            return cached.hash;
+        }
+        final HashCode hashCode = Files.hash(key, Hashing.sha256());
+        hashes.put(key, new Entry(length, lastModified, hashCode.toString()));
+        return hashCode.toString();
+    }
+
+    /**
+     * Remember a hash computed by a previous build.
+     */
+    public void seed(final File file, final long length, final long lastModified, final String hash) {
+        hashes.putIfAbsent(file.getAbsoluteFile(), new Entry(length, lastModified, hash));
+    }
+
+    /**
+     * All known hashes of files which still exist.
+     */
+    public Map<File, Entry> getEntries() {
+        final Map<File, Entry> entries = new HashMap<>();
+        for (final Map.Entry<File, Entry> entry : hashes.entrySet()) {
+            if (entry.getKey().isFile()) {
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return entries;
+    }
+
+    public static class Entry {
+
+        private final long length;
+
+        private final long lastModified;
+
+        private final String hash;
+
+        private Entry(final long length, final long lastModified, final String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+    }
+}
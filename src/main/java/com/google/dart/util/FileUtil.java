@@ -0,0 +1,29 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * File helpers shared by the files the plugin writes, e.g. manifests, caches and compiler outputs.
+ */
+public final class FileUtil {
+
+    private FileUtil() {
+    }
+
+    /**
+     * Move the given file over the target. The target is replaced atomically where the file system supports it, so
+     * concurrent builds and readers see either the old or the new content, never a partially written file. Files
+     * are written next to their target and then moved over it for this reason.
+     */
+    public static void replaceAtomically(final File source, final File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
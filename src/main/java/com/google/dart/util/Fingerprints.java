@@ -0,0 +1,75 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * A persistent store of fingerprints, e.g. hashes of the inputs of an external tool run.
+ * <p/>
+ * A step whose fingerprint matches the stored one can be skipped.
+ */
+public class Fingerprints {
+
+    private final File file;
+
+    private final Properties fingerprints = new Properties();
+
+    private Fingerprints(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Load the fingerprints from the given file. A missing or unreadable file results in an empty store.
+     */
+    public static Fingerprints load(final File file) {
+        final Fingerprints store = new Fingerprints(file);
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                store.fingerprints.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                store.fingerprints.clear();
+            }
+        }
+        return store;
+    }
+
+    public synchronized boolean matches(final String key, final String fingerprint) {
+        return fingerprint.equals(fingerprints.getProperty(key));
+    }
+
+    public synchronized void put(final String key, final String fingerprint) {
+        fingerprints.setProperty(key, fingerprint);
+    }
+
+    public synchronized void remove(final String key) {
+        fingerprints.remove(key);
+    }
+
+    /**
+     * The keys of all fingerprints, e.g. to find the outputs of steps no longer run.
+     */
+    public synchronized Set<String> keys() {
+        return fingerprints.stringPropertyNames();
+    }
+
+    /**
+     * Write the fingerprints, see {@link FileUtil#replaceAtomically}.
+     */
+    public synchronized void save() throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory '" + parent.getAbsolutePath() + "'.");
+        }
+        final File temp = new File(parent, file.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            fingerprints.store(out, null);
+        }
+        FileUtil.replaceAtomically(temp, file);
+    }
+}
@@ -0,0 +1,30 @@
+package com.google.dart.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip at the best compression level, as the files are compressed once but served many times.
+ */
+public class GzipCodec implements CompressionCodec {
+
+    public static final String NAME = "gzip";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public String getExtension() {
+        return "gz";
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        };
+    }
+}
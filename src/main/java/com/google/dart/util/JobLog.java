@@ -0,0 +1,236 @@
+package com.google.dart.util;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The log of a job running in parallel to other jobs, replayed to the maven log when the job is done.
+ * <p/>
+ * Log records are buffered in memory up to a maximum number of characters. A noisy job spills its complete log to
+ * a file; from then on only warnings, errors and the last lines of the other records are kept in memory, so the
+ * replay still ends with e.g. the compile errors a process printed last. Lines consumed as a {@link StreamConsumer},
+ * e.g. the output of a process, are logged with level info.
+ */
+public class JobLog implements StreamConsumer {
+
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private final static int DEFAULT_TAIL_LINES = 50;
+
+    private final File spillFile;
+
+    private final int maxBufferedChars;
+
+    private final int tailLines;
+
+    private final List<Record> records = new ArrayList<>();
+
+    private final ArrayDeque<Record> tail = new ArrayDeque<>();
+
+    private long sequence;
+
+    private int omittedLines;
+
+    private int bufferedChars;
+
+    private Writer spillWriter;
+
+    private boolean truncated;
+
+    /**
+     * @param spillFile        the file the complete log is written to if it exceeds the buffer, null to drop the
+     *                         exceeding records instead
+     * @param maxBufferedChars the maximum number of characters kept in memory
+     */
+    public JobLog(final File spillFile, final int maxBufferedChars) {
+        this(spillFile, maxBufferedChars, DEFAULT_TAIL_LINES);
+    }
+
+    /**
+     * @param tailLines the number of records below warnings kept in memory once the log is spilled
+     */
+    public JobLog(final File spillFile, final int maxBufferedChars, final int tailLines) {
+        this.spillFile = spillFile;
+        this.maxBufferedChars = maxBufferedChars;
+        this.tailLines = tailLines;
+    }
+
+    public void debug(final String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public void info(final String message) {
+        log(Level.INFO, message);
+    }
+
+    public void warn(final String message) {
+        log(Level.WARN, message);
+    }
+
+    public void error(final String message) {
+        log(Level.ERROR, message);
+    }
+
+    @Override
+    public void consumeLine(final String line) {
+        info(line);
+    }
+
+    public synchronized void log(final Level level, final String message) {
+        final Record record = new Record(sequence++, level, message);
+        if (spillWriter == null && bufferedChars + message.length() > maxBufferedChars && spillFile != null) {
+            spill();
+        }
+        if (spillWriter != null) {
+            write(record);
+            if (level.compareTo(Level.WARN) < 0) {
+                addToTail(record);
+                return;
+            }
+        }
+        if (bufferedChars + message.length() > maxBufferedChars) {
+            truncated = true;
+            return;
+        }
+        records.add(record);
+        bufferedChars += message.length();
+    }
+
+    private void spill() {
+        try {
+            final File parent = spillFile.getAbsoluteFile().getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Unable to create directory '" + parent.getAbsolutePath() + "'.");
+            }
+            spillWriter = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(spillFile), StandardCharsets.UTF_8));
+            final List<Record> buffered = new ArrayList<>(records);
+            records.clear();
+            bufferedChars = 0;
+            for (final Record record : buffered) {
+                write(record);
+                if (record.level.compareTo(Level.WARN) >= 0) {
+                    records.add(record);
+                    bufferedChars += record.message.length();
+                } else {
+                    addToTail(record);
+                }
+            }
+        } catch (final IOException e) {
+            spillWriter = null;
+            truncated = true;
+        }
+    }
+
+    private void addToTail(final Record record) {
+        tail.addLast(record);
+        if (tail.size() > tailLines) {
+            tail.removeFirst();
+            omittedLines++;
+        }
+    }
+
+    private void write(final Record record) {
+        try {
+            spillWriter.write("[" + record.level + "] " + record.message);
+            spillWriter.write(System.lineSeparator());
+        } catch (final IOException e) {
+            truncated = true;
+        }
+    }
+
+    /**
+     * Close the spill file, if any.
+     */
+    public synchronized void close() {
+        if (spillWriter != null) {
+            try {
+                spillWriter.close();
+            } catch (final IOException e) {
+                truncated = true;
+            }
+        }
+    }
+
+    /**
+     * Write all buffered records to the given log in the order they were logged and point to the spill file, if
+     * any.
+     */
+    public synchronized void replay(final Log log) {
+        final Iterator<Record> tailRecords = tail.iterator();
+        Record next = tailRecords.hasNext() ? tailRecords.next() : null;
+        boolean omitted = omittedLines == 0;
+        for (final Record record : records) {
+            while (next != null && next.sequence < record.sequence) {
+                omitted = replayOmitted(log, omitted);
+                replay(log, next);
+                next = tailRecords.hasNext() ? tailRecords.next() : null;
+            }
+            replay(log, record);
+        }
+        while (next != null) {
+            omitted = replayOmitted(log, omitted);
+            replay(log, next);
+            next = tailRecords.hasNext() ? tailRecords.next() : null;
+        }
+        if (spillWriter != null) {
+            log.info("The complete output was written to " + spillFile.getAbsolutePath());
+        }
+        if (truncated) {
+            log.warn("The output exceeded " + maxBufferedChars + " characters and was truncated.");
+        }
+    }
+
+    private boolean replayOmitted(final Log log, final boolean omitted) {
+        if (!omitted) {
+            log.info("[" + omittedLines + " lines omitted]");
+        }
+        return true;
+    }
+
+    private static void replay(final Log log, final Record record) {
+        switch (record.level) {
+            case DEBUG:
+                log.debug(record.message);
+                break;
+            case INFO:
+                log.info(record.message);
+                break;
+            case WARN:
+                log.warn(record.message);
+                break;
+            default:
+                log.error(record.message);
+                break;
+        }
+    }
+
+    private static class Record {
+
+        private final long sequence;
+
+        private final Level level;
+
+        private final String message;
+
+        private Record(final long sequence, final Level level, final String message) {
+            this.sequence = sequence;
+            this.level = level;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.google.dart.util;
+
+/**
+ * Helpers for the json files written by hand, as the plugin has no json library.
+ */
+public final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * The given value as json string literal, <code>null</code> for null.
+     */
+    public static String quote(final String value) {
+        if (value == null) {
+            return "null";
+        }
+        final StringBuilder builder = new StringBuilder("\"");
+        for (final char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,159 @@
+package com.google.dart.util;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the test results from the machine readable output of the package:test runner
+ * (<code>--reporter json</code>).
+ * <p/>
+ * Every line of the reporter output is a json object describing one event. As json is a subset of yaml, the lines
+ * are parsed with snakeyaml. Lines which are not reporter events, e.g. the output of pub itself, are passed on to
+ * the given delegate.
+ */
+public class JsonTestReporter implements StreamConsumer {
+
+    private final StreamConsumer delegate;
+
+    private final Yaml yaml = new Yaml();
+
+    private final Map<Object, String> suites = new HashMap<>();
+
+    private final Map<Object, RunningTest> runningTests = new HashMap<>();
+
+    private final List<TestResult> results = new ArrayList<>();
+
+    private Boolean success;
+
+    public JsonTestReporter(final StreamConsumer delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void consumeLine(final String line) {
+        final Map<String, Object> event = parse(line);
+        if (event == null) {
+            delegate.consumeLine(line);
+            return;
+        }
+        switch (String.valueOf(event.get("type"))) {
+            case "suite":
+                final Map<String, Object> suite = map(event.get("suite"));
+                suites.put(suite.get("id"), (String) suite.get("path"));
+                break;
+            case "testStart":
+                final Map<String, Object> test = map(event.get("test"));
+                final String suitePath = suites.get(test.get("suiteID"));
+                runningTests.put(test.get("id"), new RunningTest(suitePath == null ? "" : suitePath,
+                    (String) test.get("name"), time(event)));
+                break;
+            case "print":
+                final RunningTest printing = runningTests.get(event.get("testID"));
+                if (printing != null) {
+                    printing.output.append(event.get("message")).append('\n');
+                }
+                break;
+            case "error":
+                final RunningTest failing = runningTests.get(event.get("testID"));
+                if (failing != null) {
+                    failing.message.append(event.get("error")).append('\n').append(event.get("stackTrace"));
+                }
+                break;
+            case "testDone":
+                testDone(event);
+                break;
+            case "done":
+                success = Boolean.TRUE.equals(event.get("success"));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void testDone(final Map<String, Object> event) {
+        final RunningTest test = runningTests.remove(event.get("testID"));
+        if (test == null) {
+            return;
+        }
+        final String result = (String) event.get("result");
+        final TestResult.Status status;
+        if (Boolean.TRUE.equals(event.get("skipped"))) {
+            status = TestResult.Status.SKIPPED;
+        } else if ("success".equals(result)) {
+            status = TestResult.Status.PASSED;
+        } else if ("failure".equals(result)) {
+            status = TestResult.Status.FAILED;
+        } else {
+            status = TestResult.Status.ERROR;
+        }
+        // hidden tests are the runner's pseudo tests for loading suites, only their failures are of interest
+        if (Boolean.TRUE.equals(event.get("hidden")) && status == TestResult.Status.PASSED) {
+            return;
+        }
+        results.add(new TestResult(test.suite, test.name, status, Math.max(0, time(event) - test.startTime),
+            test.message.toString(), test.output.toString()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parse(final String line) {
+        final String trimmed = line.trim();
+        if (!trimmed.startsWith("{") || !trimmed.endsWith("}")) {
+            return null;
+        }
+        try {
+            final Object event = yaml.load(trimmed);
+            return event instanceof Map ? (Map<String, Object>) event : null;
+        } catch (final YAMLException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(final Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : new HashMap<String, Object>();
+    }
+
+    private static long time(final Map<String, Object> event) {
+        final Object time = event.get("time");
+        return time instanceof Number ? ((Number) time).longValue() : 0;
+    }
+
+    /**
+     * The results of all finished tests.
+     */
+    public List<TestResult> getResults() {
+        return results;
+    }
+
+    /**
+     * The overall result reported by the runner, null if the runner did not finish.
+     */
+    public Boolean getSuccess() {
+        return success;
+    }
+
+    private static class RunningTest {
+
+        private final String suite;
+
+        private final String name;
+
+        private final long startTime;
+
+        private final StringBuilder message = new StringBuilder();
+
+        private final StringBuilder output = new StringBuilder();
+
+        private RunningTest(final String suite, final String name, final long startTime) {
+            this.suite = suite;
+            this.name = name;
+            this.startTime = startTime;
+        }
+    }
+}
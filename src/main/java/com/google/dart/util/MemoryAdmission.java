@@ -0,0 +1,53 @@
+package com.google.dart.util;
+
+/**
+ * Admission control for memory hungry processes, e.g. dart2js runs of large applications.
+ * <p/>
+ * A process is started only if its estimated memory fits into the budget next to the estimates of the processes
+ * already running, and if the system currently has that much memory available. Otherwise the start is held back
+ * until a running process finishes or memory is freed. A process is always admitted if no other one is running, so
+ * every job makes progress even if its estimate exceeds the budget.
+ */
+public class MemoryAdmission {
+
+    private static final long POLL_MILLIS = 1000;
+
+    private final long budgetBytes;
+
+    private long reservedBytes;
+
+    private int running;
+
+    /**
+     * @param budgetBytes the memory all admitted processes may use together, unlimited if not positive
+     */
+    public MemoryAdmission(final long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Wait until a process with the given memory estimate may be started.
+     */
+    public synchronized void acquire(final long estimateBytes) throws InterruptedException {
+        while (running > 0 && !fits(estimateBytes)) {
+            // available memory changes outside of our control, so poll instead of only waiting for a release
+            wait(POLL_MILLIS);
+        }
+        running++;
+        reservedBytes += estimateBytes;
+    }
+
+    public synchronized void release(final long estimateBytes) {
+        running--;
+        reservedBytes -= estimateBytes;
+        notifyAll();
+    }
+
+    private boolean fits(final long estimateBytes) {
+        if (budgetBytes > 0 && reservedBytes + estimateBytes > budgetBytes) {
+            return false;
+        }
+        final long available = SystemResources.getAvailableMemory();
+        return available == SystemResources.UNKNOWN || available >= estimateBytes;
+    }
+}
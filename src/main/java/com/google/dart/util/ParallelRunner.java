@@ -0,0 +1,76 @@
+package com.google.dart.util;
+
+import org.apache.commons.io.output.StringBuilderWriter;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.codehaus.plexus.util.cli.WriterStreamConsumer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs tasks, e.g. dart processes, on a thread pool of its own. The output of every task is buffered and printed as
+ * one block when the task is done, so the output of tasks running at the same time does not interleave.
+ */
+public final class ParallelRunner {
+
+    private ParallelRunner() {
+    }
+
+    /**
+     * A task writing its output to the given consumer.
+     */
+    public interface Task<T> {
+
+        T run(StreamConsumer output) throws Exception;
+    }
+
+    /**
+     * Run the given tasks on the given number of threads and wait for all of them. The first task failing cancels
+     * all tasks not yet finished.
+     *
+     * @return the results in the order the tasks finished
+     * @throws ExecutionException the failure of the first task failing
+     */
+    public static <T> List<T> run(final Collection<? extends Task<T>> tasks, final int threadCount)
+        throws InterruptedException, ExecutionException {
+        final List<T> results = new ArrayList<>();
+        if (tasks.isEmpty()) {
+            return results;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threadCount, tasks.size())));
+        final CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        for (final Task<T> task : tasks) {
+            completionService.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    final StringBuilderWriter writer = new StringBuilderWriter();
+                    try {
+                        return task.run(new WriterStreamConsumer(writer));
+                    } finally {
+                        writer.flush();
+                        synchronized (System.out) {
+                            System.out.print(writer.toString());
+                            System.out.flush();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                results.add(completionService.take().get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
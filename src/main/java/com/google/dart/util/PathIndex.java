@@ -0,0 +1,134 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of directories, e.g. compile source roots or dart package roots, answering which of them contains a given
+ * path and whether they are nested.
+ * <p/>
+ * Paths are stored in a trie of their name segments, so a lookup costs the depth of the path, independent of the
+ * number of indexed directories. Unlike a string prefix comparison, <code>/a/foobar</code> is not considered to be
+ * inside <code>/a/foo</code>.
+ *
+ * @param <V> the type of the values stored with the directories
+ */
+public class PathIndex<V> {
+
+    private final Node<V> root = new Node<>();
+
+    private int size;
+
+    /**
+     * Index the given directory with the given value, replacing the value of the directory if it is indexed already.
+     */
+    public synchronized void put(final File directory, final V value) {
+        final List<Node<V>> path = new ArrayList<>();
+        Node<V> node = root;
+        for (final Path segment : normalize(directory)) {
+            final String name = segment.toString();
+            Node<V> child = node.children.get(name);
+            if (child == null) {
+                child = new Node<>();
+                node.children.put(name, child);
+            }
+            path.add(child);
+            node = child;
+        }
+        if (!node.indexed) {
+            for (final Node<V> ancestor : path) {
+                ancestor.descendants++;
+            }
+            size++;
+        }
+        node.indexed = true;
+        node.value = value;
+    }
+
+    /**
+     * The value of the deepest indexed directory containing the given path or being the path itself, null if there is
+     * none.
+     */
+    public synchronized V findOwner(final File path) {
+        Node<V> node = root;
+        V owner = root.indexed ? root.value : null;
+        for (final Path segment : normalize(path)) {
+            node = node.children.get(segment.toString());
+            if (node == null) {
+                break;
+            }
+            if (node.indexed) {
+                owner = node.value;
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * Whether an indexed directory contains the given path or is the path itself.
+     */
+    public synchronized boolean hasOwner(final File path) {
+        Node<V> node = root;
+        if (root.indexed) {
+            return true;
+        }
+        for (final Path segment : normalize(path)) {
+            node = node.children.get(segment.toString());
+            if (node == null) {
+                return false;
+            }
+            if (node.indexed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether an indexed directory lies below the given path.
+     */
+    public synchronized boolean hasDescendant(final File path) {
+        Node<V> node = root;
+        for (final Path segment : normalize(path)) {
+            node = node.children.get(segment.toString());
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.descendants - (node.indexed ? 1 : 0) > 0;
+    }
+
+    /**
+     * Whether the given path is, contains or is contained in an indexed directory.
+     */
+    public synchronized boolean isNested(final File path) {
+        return hasOwner(path) || hasDescendant(path);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static Path normalize(final File file) {
+        final Path path = file.getAbsoluteFile().toPath().normalize();
+        return path.getRoot() == null ? path : path.getRoot().relativize(path);
+    }
+
+    private static class Node<V> {
+
+        private final Map<String, Node<V>> children = new HashMap<>();
+
+        /**
+         * The number of indexed directories at or below this node.
+         */
+        private int descendants;
+
+        private boolean indexed;
+
+        private V value;
+    }
+}
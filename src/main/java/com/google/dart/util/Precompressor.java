@@ -0,0 +1,272 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes compressed siblings of files, e.g. <code>main.dart.js.gz</code> next to <code>main.dart.js</code>, on a
+ * thread pool of its own, so files can be compressed while others are still being generated.
+ * <p/>
+ * The content hash of every compressed file is kept in a state file. A file is compressed again only if its content
+ * changed or a compressed sibling is missing; size and modification time spare the hashing of untouched files.
+ */
+public class Precompressor {
+
+    private final File root;
+
+    private final List<CompressionCodec> codecs;
+
+    private final Collection<String> suffixes;
+
+    private final File stateFile;
+
+    private final ExecutorService executor;
+
+    private final FileHashes fileHashes = new FileHashes();
+
+    private final Map<String, String> state = new ConcurrentHashMap<>();
+
+    private final Set<File> submitted = ConcurrentHashMap.newKeySet();
+
+    private final List<Future<?>> futures = new ArrayList<>();
+
+    private final AtomicInteger compressed = new AtomicInteger();
+
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    private final AtomicLong bytesIn = new AtomicLong();
+
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    /**
+     * @param root        the directory all compressed files are in, the keys of the state file are relative to it
+     * @param codecs      the codecs writing one sibling each
+     * @param suffixes    the suffixes of the file names to compress, e.g. <code>.js</code>
+     * @param stateFile   the file the content hashes are kept in between builds
+     * @param threadCount the number of files compressed in parallel
+     */
+    public Precompressor(final File root, final List<CompressionCodec> codecs, final Collection<String> suffixes,
+        final File stateFile, final int threadCount) {
+        this.root = root.getAbsoluteFile();
+        this.codecs = codecs;
+        this.suffixes = suffixes;
+        this.stateFile = stateFile;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+        loadState();
+    }
+
+    /**
+     * The codec of the given name, either <code>gzip</code> or the class name of a {@link CompressionCodec}.
+     */
+    public static CompressionCodec createCodec(final String name) {
+        if (GzipCodec.NAME.equalsIgnoreCase(name.trim())) {
+            return new GzipCodec();
+        }
+        try {
+            final Class<?> codecClass = Class.forName(name.trim(), true, Precompressor.class.getClassLoader());
+            return codecClass.asSubclass(CompressionCodec.class).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException | ClassCastException | NoSuchMethodException e) {
+            throw new IllegalArgumentException("Unknown compression codec '" + name + "'.", e);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalArgumentException("Unable to create compression codec '" + name + "'.", e);
+        }
+    }
+
+    /**
+     * Compress the given files in the background, if their names end with one of the suffixes. Every file is
+     * compressed once only.
+     */
+    public void submit(final Collection<File> files) {
+        for (final File file : files) {
+            if (!matches(file.getName()) || !submitted.add(file.getAbsoluteFile())) {
+                continue;
+            }
+            final Future<?> future = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    compress(file.getAbsoluteFile());
+                    return null;
+                }
+            });
+            synchronized (futures) {
+                futures.add(future);
+            }
+        }
+    }
+
+    /**
+     * Compress all matching files below the given directory not submitted yet, e.g. those up to date.
+     */
+    public void submitDirectory(final File directory) throws IOException {
+        if (!directory.isDirectory()) {
+            return;
+        }
+        final List<File> files = new ArrayList<>();
+        Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    files.add(file.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        submit(files);
+    }
+
+    /**
+     * Wait until all submitted files are compressed.
+     *
+     * @throws IOException if a file could not be compressed
+     */
+    public void await() throws IOException, InterruptedException {
+        int index = 0;
+        while (true) {
+            final Future<?> future;
+            synchronized (futures) {
+                if (index >= futures.size()) {
+                    return;
+                }
+                future = futures.get(index++);
+            }
+            try {
+                future.get();
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Unable to compress.", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Stop compressing and write the state of all files compressed so far.
+     */
+    public void close() throws IOException {
+        executor.shutdownNow();
+        saveState();
+    }
+
+    public String getStatistics() {
+        return compressed.get() + " file" + (compressed.get() == 1 ? "" : "s") + " compressed ("
+            + bytesIn.get() / 1024 + " KB to " + bytesOut.get() / 1024 + " KB), " + skipped.get() + " unchanged";
+    }
+
+    private boolean matches(final String name) {
+        for (final String suffix : suffixes) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void compress(final File file) throws IOException {
+        final String key = root.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+        final String previous = state.get(key);
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        final String stamp = length + ":" + lastModified + ":";
+        if (previous != null && previous.startsWith(stamp) && siblingsExist(file)) {
+            skipped.incrementAndGet();
+            return;
+        }
+        final String hash = fileHashes.hash(file);
+        if (previous != null && previous.endsWith(":" + hash) && siblingsExist(file)) {
+            state.put(key, stamp + hash);
+            skipped.incrementAndGet();
+            return;
+        }
+        state.remove(key);
+        for (final CompressionCodec codec : codecs) {
+            final File sibling = new File(file.getPath() + "." + codec.getExtension());
+            final File temp = Files.createTempFile(file.getParentFile().toPath(), sibling.getName(), ".tmp").toFile();
+            try {
+                try (InputStream in = new FileInputStream(file);
+                     OutputStream out = codec.compress(new FileOutputStream(temp))) {
+                    final byte[] buffer = new byte[64 * 1024];
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+                bytesIn.addAndGet(length);
+                bytesOut.addAndGet(temp.length());
+                FileUtil.replaceAtomically(temp, sibling);
+            } finally {
+                Files.deleteIfExists(temp.toPath());
+            }
+        }
+        compressed.incrementAndGet();
+        state.put(key, stamp + hash);
+    }
+
+    private boolean siblingsExist(final File file) {
+        for (final CompressionCodec codec : codecs) {
+            if (!new File(file.getPath() + "." + codec.getExtension()).isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void loadState() {
+        if (stateFile == null || !stateFile.isFile()) {
+            return;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(stateFile)) {
+            properties.load(in);
+            for (final String key : properties.stringPropertyNames()) {
+                state.put(key, properties.getProperty(key));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            state.clear();
+        }
+    }
+
+    /**
+     * Write the state, see {@link FileUtil#replaceAtomically}.
+     */
+    private void saveState() throws IOException {
+        if (stateFile == null) {
+            return;
+        }
+        final Properties properties = new Properties();
+        properties.putAll(state);
+        final File parent = stateFile.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory '" + parent.getAbsolutePath() + "'.");
+        }
+        final File temp = new File(parent, stateFile.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            properties.store(out, null);
+        }
+        FileUtil.replaceAtomically(temp, stateFile);
+    }
+}
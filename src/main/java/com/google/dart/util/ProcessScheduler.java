@@ -0,0 +1,262 @@
+package com.google.dart.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of dart processes (dart2js, pub, tests, scripts) running at the same time in the whole jvm.
+ * <p/>
+ * Maven shares the plugin class realm between all executions of a session, so one pool of permits serves all
+ * modules of a parallel reactor build (<code>mvn -T</code>), next to the thread pools of the single executions. Every
+ * module requests its permits through a scheduler of its own. A free permit goes to the waiting module with the
+ * fewest running processes, so a module with many threads does not starve the others.
+ */
+public final class ProcessScheduler {
+
+    private static Pool sharedPool;
+
+    private final Pool pool;
+
+    private final String owner;
+
+    /**
+     * A scheduler with a pool of its own.
+     *
+     * @param permitCount the number of processes allowed to run at the same time
+     */
+    ProcessScheduler(final int permitCount) {
+        this(new Pool(permitCount), "");
+    }
+
+    private ProcessScheduler(final Pool pool, final String owner) {
+        this.pool = pool;
+        this.owner = owner;
+    }
+
+    /**
+     * The scheduler of the given owner on the pool of this jvm. The first call decides the number of permits. A later
+     * call asking for another number changes it only while no process runs, e.g. in the next build of a long-lived
+     * maven daemon; compare {@link #getPermitCount()} to find out whether it did.
+     *
+     * @param permitCount the number of processes allowed to run at the same time, the number of available cpus if not
+     *                    positive
+     * @param owner       the module requesting permits
+     */
+    public static synchronized ProcessScheduler getInstance(final int permitCount, final String owner) {
+        final int resolved = resolvePermitCount(permitCount);
+        if (sharedPool == null) {
+            sharedPool = new Pool(resolved);
+        } else {
+            sharedPool.resizeIfIdle(resolved);
+        }
+        return new ProcessScheduler(sharedPool, owner);
+    }
+
+    /**
+     * The number of permits the given configured value stands for.
+     */
+    public static int resolvePermitCount(final int permitCount) {
+        return permitCount > 0 ? permitCount : SystemResources.getAvailableProcessors();
+    }
+
+    /**
+     * A scheduler sharing the permits of this one for another owner.
+     */
+    public ProcessScheduler forOwner(final String owner) {
+        return new ProcessScheduler(pool, owner);
+    }
+
+    /**
+     * Wait until another process may be started.
+     */
+    public void acquire() throws InterruptedException {
+        pool.acquire(owner, -1);
+    }
+
+    /**
+     * Wait until another process may be started, at most for the given time.
+     *
+     * @return false if no permit was granted in time
+     */
+    public boolean tryAcquire(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return pool.acquire(owner, Math.max(0, unit.toNanos(timeout)));
+    }
+
+    /**
+     * Signal that a process started after {@link #acquire()} has finished.
+     */
+    public void release() {
+        pool.release(owner);
+    }
+
+    public int getPermitCount() {
+        return pool.getPermitCount();
+    }
+
+    /**
+     * The number of processes of all owners waiting for a permit.
+     */
+    public int getWaitingCount() {
+        return pool.getWaitingCount();
+    }
+
+    /**
+     * The number of processes of other owners waiting for a permit.
+     */
+    public int getOthersWaitingCount() {
+        return pool.getOthersWaitingCount(owner);
+    }
+
+    private static class Pool {
+
+        private int permitCount;
+
+        private int running;
+
+        private final Map<String, Integer> runningByOwner = new HashMap<>();
+
+        /**
+         * The waiting requests by owner, the owner served last at the end.
+         */
+        private final LinkedHashMap<String, Deque<Request>> waiting = new LinkedHashMap<>();
+
+        private int waitingCount;
+
+        private Pool(final int permitCount) {
+            this.permitCount = permitCount;
+        }
+
+        private synchronized void resizeIfIdle(final int permitCount) {
+            if (running == 0 && waitingCount == 0) {
+                this.permitCount = permitCount;
+            }
+        }
+
+        /**
+         * @param timeoutNanos the maximum time to wait, forever if negative
+         * @return false if no permit was granted in time
+         */
+        private synchronized boolean acquire(final String owner, final long timeoutNanos)
+            throws InterruptedException {
+            if (waitingCount == 0 && running < permitCount) {
+                grant(owner);
+                return true;
+            }
+            final Request request = new Request();
+            Deque<Request> requests = waiting.get(owner);
+            if (requests == null) {
+                requests = new ArrayDeque<>();
+                waiting.put(owner, requests);
+            }
+            requests.add(request);
+            waitingCount++;
+            final long deadline = System.nanoTime() + timeoutNanos;
+            try {
+                while (!request.granted) {
+                    if (timeoutNanos < 0) {
+                        wait();
+                        continue;
+                    }
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        withdraw(owner, requests, request);
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+                return true;
+            } catch (final InterruptedException e) {
+                if (request.granted) {
+                    release(owner);
+                } else {
+                    withdraw(owner, requests, request);
+                }
+                throw e;
+            }
+        }
+
+        private void withdraw(final String owner, final Deque<Request> requests, final Request request) {
+            requests.remove(request);
+            waitingCount--;
+            if (requests.isEmpty()) {
+                waiting.remove(owner);
+            }
+        }
+
+        private synchronized void release(final String owner) {
+            final Integer count = runningByOwner.get(owner);
+            if (count == null) {
+                throw new IllegalStateException("No permit held by '" + owner + "'.");
+            }
+            if (count == 1) {
+                runningByOwner.remove(owner);
+            } else {
+                runningByOwner.put(owner, count - 1);
+            }
+            running--;
+            dispatch();
+        }
+
+        /**
+         * Hand the free permits to the waiting owners with the fewest running processes, the owner served longest ago
+         * first among equals.
+         */
+        private void dispatch() {
+            boolean granted = false;
+            while (running < permitCount && waitingCount > 0) {
+                String next = null;
+                int fewest = Integer.MAX_VALUE;
+                for (final String owner : waiting.keySet()) {
+                    final int count = getRunning(owner);
+                    if (count < fewest) {
+                        next = owner;
+                        fewest = count;
+                    }
+                }
+                final Deque<Request> requests = waiting.remove(next);
+                requests.poll().granted = true;
+                waitingCount--;
+                if (!requests.isEmpty()) {
+                    waiting.put(next, requests);
+                }
+                grant(next);
+                granted = true;
+            }
+            if (granted) {
+                notifyAll();
+            }
+        }
+
+        private void grant(final String owner) {
+            running++;
+            runningByOwner.put(owner, getRunning(owner) + 1);
+        }
+
+        private int getRunning(final String owner) {
+            final Integer count = runningByOwner.get(owner);
+            return count == null ? 0 : count;
+        }
+
+        private synchronized int getPermitCount() {
+            return permitCount;
+        }
+
+        private synchronized int getWaitingCount() {
+            return waitingCount;
+        }
+
+        private synchronized int getOthersWaitingCount(final String owner) {
+            final Deque<Request> requests = waiting.get(owner);
+            return waitingCount - (requests == null ? 0 : requests.size());
+        }
+    }
+
+    private static class Request {
+
+        private boolean granted;
+    }
+}
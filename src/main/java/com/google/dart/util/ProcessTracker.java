@@ -0,0 +1,210 @@
+package com.google.dart.util;
+
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.codehaus.plexus.util.cli.StreamPumper;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs external processes and keeps track of the running ones, so all of them can be killed at once, e.g. when a
+ * build is cancelled or runs out of time.
+ * <p/>
+ * Killing a process kills its descendants as well where the jvm supports it (java 9 and later); the dart sdk
+ * scripts start the actual vm as a child process.
+ * <p/>
+ * With a {@link MemoryAdmission}, processes given a memory estimate are only started if enough memory is available,
+ * and their peak memory is measured while they run. With a {@link ProcessScheduler}, processes are only started
+ * while the jvm wide process limit allows it.
+ */
+public class ProcessTracker {
+
+    private static final long SAMPLE_MILLIS = 500;
+
+    private final Set<Process> processes = Collections.newSetFromMap(new ConcurrentHashMap<Process, Boolean>());
+
+    private final ProcessScheduler scheduler;
+
+    private final MemoryAdmission admission;
+
+    private volatile boolean destroyed;
+
+    public ProcessTracker() {
+        this(null, null);
+    }
+
+    /**
+     * @param scheduler the jvm wide process limit, null for none
+     * @param admission the admission control for processes with a memory estimate, null to start them right away
+     */
+    public ProcessTracker(final ProcessScheduler scheduler, final MemoryAdmission admission) {
+        this.scheduler = scheduler;
+        this.admission = admission;
+    }
+
+    /**
+     * Run the given command line and wait for it to finish. The process is killed if the calling thread is
+     * interrupted or {@link #destroyAll()} is called meanwhile.
+     *
+     * @return the exit code of the process
+     * @throws CommandLineException if the process can't be started or was killed by {@link #destroyAll()}
+     * @throws InterruptedException if the calling thread was interrupted
+     */
+    public int execute(final Commandline cl, final StreamConsumer out, final StreamConsumer err)
+        throws CommandLineException, InterruptedException {
+        return execute(cl, out, err, 0).getExitCode();
+    }
+
+    /**
+     * Run the given command line, once the admission control admits a process with the given memory estimate, and
+     * wait for it to finish. The peak memory of the process is measured if the estimate is positive.
+     *
+     * @see #execute(Commandline, StreamConsumer, StreamConsumer)
+     */
+    public Execution execute(final Commandline cl, final StreamConsumer out, final StreamConsumer err,
+        final long memoryEstimateBytes) throws CommandLineException, InterruptedException {
+        if (destroyed) {
+            throw new CommandLineException("Cancelled before start: " + cl);
+        }
+        if (scheduler == null) {
+            return admitAndRun(cl, out, err, memoryEstimateBytes);
+        }
+        scheduler.acquire();
+        try {
+            return admitAndRun(cl, out, err, memoryEstimateBytes);
+        } finally {
+            scheduler.release();
+        }
+    }
+
+    // memory is reserved only once a scheduler permit is held, so waiting jobs don't hold memory they don't use yet
+    private Execution admitAndRun(final Commandline cl, final StreamConsumer out, final StreamConsumer err,
+        final long memoryEstimateBytes) throws CommandLineException, InterruptedException {
+        final boolean admitted = admission != null && memoryEstimateBytes > 0;
+        if (admitted) {
+            admission.acquire(memoryEstimateBytes);
+        }
+        try {
+            return run(cl, out, err, memoryEstimateBytes > 0);
+        } finally {
+            if (admitted) {
+                admission.release(memoryEstimateBytes);
+            }
+        }
+    }
+
+    private Execution run(final Commandline cl, final StreamConsumer out, final StreamConsumer err,
+        final boolean measure) throws CommandLineException, InterruptedException {
+        if (destroyed) {
+            throw new CommandLineException("Cancelled before start: " + cl);
+        }
+        final Process process = cl.execute();
+        processes.add(process);
+        final StreamPumper outPumper = new StreamPumper(process.getInputStream(), out);
+        final StreamPumper errPumper = new StreamPumper(process.getErrorStream(), err);
+        try {
+            if (destroyed) {
+                destroyTree(process);
+            }
+            closeQuietly(process);
+            outPumper.start();
+            errPumper.start();
+            long peakMemory = SystemResources.UNKNOWN;
+            if (measure) {
+                // the peak of a process is gone with the process, so sample it while it runs
+                while (!process.waitFor(SAMPLE_MILLIS, TimeUnit.MILLISECONDS)) {
+                    peakMemory = Math.max(peakMemory, SystemResources.getPeakResidentSetSize(process));
+                }
+            }
+            final int returnValue = process.waitFor();
+            outPumper.waitUntilDone();
+            errPumper.waitUntilDone();
+            if (destroyed) {
+                throw new CommandLineException("Cancelled: " + cl);
+            }
+            return new Execution(returnValue, peakMemory);
+        } catch (final InterruptedException e) {
+            destroyTree(process);
+            throw e;
+        } finally {
+            processes.remove(process);
+            outPumper.close();
+            errPumper.close();
+        }
+    }
+
+    /**
+     * Kill all running processes and refuse to start new ones.
+     */
+    public void destroyAll() {
+        destroyed = true;
+        for (final Process process : processes) {
+            destroyTree(process);
+        }
+    }
+
+    /**
+     * The number of processes currently running.
+     */
+    public int getRunningCount() {
+        return processes.size();
+    }
+
+    /**
+     * The outcome of a finished process.
+     */
+    public static class Execution {
+
+        private final int exitCode;
+
+        private final long peakMemoryBytes;
+
+        private Execution(final int exitCode, final long peakMemoryBytes) {
+            this.exitCode = exitCode;
+            this.peakMemoryBytes = peakMemoryBytes;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        /**
+         * The peak resident set size of the process and its descendants, {@link SystemResources#UNKNOWN} if it was
+         * not measured or the process finished before the first sample.
+         */
+        public long getPeakMemoryBytes() {
+            return peakMemoryBytes;
+        }
+    }
+
+    private static void closeQuietly(final Process process) {
+        try {
+            process.getOutputStream().close();
+        } catch (final IOException e) {
+            // the process does not read its input anyway
+        }
+    }
+
+    /**
+     * Kill the given process and, on java 9 and later, all its descendants.
+     */
+    static void destroyTree(final Process process) {
+        try {
+            final Method descendants = Process.class.getMethod("descendants");
+            final Method destroyForcibly = Class.forName("java.lang.ProcessHandle").getMethod("destroyForcibly");
+            for (final Object handle : ((Stream<?>) descendants.invoke(process)).toArray()) {
+                destroyForcibly.invoke(handle);
+            }
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            // java 8, only the process itself can be killed
+        }
+        process.destroyForcibly();
+    }
+}
@@ -0,0 +1,205 @@
+package com.google.dart.util;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds the <code>pubspec.yaml</code> files of all dart packages below a set of directories.
+ * <p/>
+ * Directories generated by pub and the compilers and hidden directories, e.g. <code>.pub</code> and
+ * <code>.dart_tool</code>, are not entered; the <code>packages</code> symlink farms alone make up most of a naive
+ * walk. A <code>packages</code> directory is only taken for a symlink farm if it sits next to a pubspec or holds
+ * symlinks only, and a <code>build</code> directory only if it sits next to a pubspec, so real packages in
+ * directories of these names are still found. Symlinked directories are followed, but every directory is visited
+ * once only, identified by its file key, so symlink cycles and multiple links to the same directory cost nothing.
+ */
+public class PubspecFinder {
+
+    public static final String PUBSPEC = "pubspec.yaml";
+
+    private static final String PACKAGES = "packages";
+
+    private static final String BUILD = "build";
+
+    private final int threadCount;
+
+    private final Log log;
+
+    /**
+     * @param threadCount the number of directories walked in parallel
+     * @param log         the log the skipped directories are reported to with level debug
+     */
+    public PubspecFinder(final int threadCount, final Log log) {
+        this.threadCount = threadCount;
+        this.log = log;
+    }
+
+    /**
+     * Whether the given directory is skipped by the walk: a hidden directory, a <code>packages</code> symlink farm
+     * or the <code>build</code> output of a package.
+     */
+    public static boolean isPruned(final Path directory) {
+        final String name = directory.getFileName() == null ? "" : directory.getFileName().toString();
+        if (name.startsWith(".")) {
+            return true;
+        }
+        if (PACKAGES.equals(name)) {
+            return isPackageRootChild(directory) || containsSymlinksOnly(directory);
+        }
+        return BUILD.equals(name) && isPackageRootChild(directory);
+    }
+
+    private static boolean isPackageRootChild(final Path directory) {
+        final Path parent = directory.getParent();
+        return parent != null && Files.isRegularFile(parent.resolve(PUBSPEC));
+    }
+
+    private static boolean containsSymlinksOnly(final Path directory) {
+        boolean empty = true;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (final Path entry : entries) {
+                if (!Files.isSymbolicLink(entry)) {
+                    return false;
+                }
+                empty = false;
+            }
+        } catch (final IOException e) {
+            return false;
+        }
+        return !empty;
+    }
+
+    /**
+     * The pubspec files below every given directory, sorted by path.
+     */
+    public Map<File, List<File>> find(final List<File> directories) throws IOException {
+        final Map<File, List<File>> result = new LinkedHashMap<>();
+        if (threadCount <= 1 || directories.size() <= 1) {
+            for (final File directory : directories) {
+                result.put(directory, find(directory));
+            }
+            return result;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, directories.size()));
+        try {
+            final Map<File, Future<List<File>>> futures = new LinkedHashMap<>();
+            for (final File directory : directories) {
+                futures.put(directory, executor.submit(new Callable<List<File>>() {
+                    @Override
+                    public List<File> call() throws IOException {
+                        return find(directory);
+                    }
+                }));
+            }
+            for (final Map.Entry<File, Future<List<File>>> future : futures.entrySet()) {
+                result.put(future.getKey(), future.getValue().get());
+            }
+            return result;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while searching for dart packages.", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to search for dart packages.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The pubspec files below the given directory, sorted by path.
+     * <p/>
+     * Symlinked directories are walked after all real directories, so a directory reachable both directly and
+     * through a symlink is always found by its real path.
+     */
+    public List<File> find(final File directory) throws IOException {
+        final List<File> pubspecs = new ArrayList<>();
+        final Set<Object> visited = new HashSet<>();
+        final Deque<Path> pending = new ArrayDeque<>();
+        pending.add(directory.toPath());
+        while (!pending.isEmpty()) {
+            walk(pending.poll(), visited, pending, pubspecs);
+        }
+        Collections.sort(pubspecs);
+        return pubspecs;
+    }
+
+    /**
+     * Walk the given directory without following symlinks, collecting the symlinked directories for later walks.
+     * Paths are reported below the given directory, even if it is a symlink itself.
+     */
+    private void walk(final Path root, final Set<Object> visited, final Deque<Path> symlinks,
+        final List<File> pubspecs) throws IOException {
+        final Path start = Files.isSymbolicLink(root) ? root.toRealPath() : root;
+        final List<Path> found = new ArrayList<>();
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                if (!dir.equals(start) && isPruned(dir)) {
+                    logPruned(dir);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                final Object key = attrs.fileKey() != null ? attrs.fileKey() : dir.toAbsolutePath().normalize();
+                return visited.add(key) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (attrs.isSymbolicLink()) {
+                    if (Files.isDirectory(file)) {
+                        if (isPruned(file)) {
+                            logPruned(file);
+                        } else {
+                            found.add(root.resolve(start.relativize(file)));
+                        }
+                    }
+                } else if (PUBSPEC.equals(file.getFileName().toString()) && attrs.isRegularFile()) {
+                    pubspecs.add(root.resolve(start.relativize(file)).toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException e) throws IOException {
+                if (!file.equals(start)) {
+                    // dangling or unreadable entries below the root are no packages
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+        });
+        Collections.sort(found);
+        symlinks.addAll(found);
+    }
+
+    private void logPruned(final Path directory) {
+        if (log.isDebugEnabled()) {
+            log.debug("Skip " + directory + " in the search for dart packages.");
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.google.dart.util;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * What a dart-sdk offers: its version, its executables and the flags the tools accept according to their help.
+ * <p/>
+ * Probing runs every tool once, so descriptors are cached in memory for the jvm and on disk across builds. Both caches
+ * are keyed by the sdk directory and the modification time of its <code>version</code> file, so an sdk updated in
+ * place is probed again.
+ */
+public class SdkDescriptor {
+
+    public static final String DART = "dart";
+
+    public static final String DART2JS = "dart2js";
+
+    public static final String PUB = "pub";
+
+    private static final String[] PROBED_TOOLS = {DART, DART2JS};
+
+    private static final int PROBE_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Options as printed by the help of the tools, e.g. <code>-c</code>, <code>--minify</code>,
+     * <code>--categories=</code> or <code>--[no-]source-maps</code>.
+     */
+    private static final Pattern FLAG = Pattern.compile("(?<![\\w-])(--?)(\\[no-\\])?([a-zA-Z][\\w-]*)");
+
+    private static final Map<String, SdkDescriptor> DESCRIPTORS = new ConcurrentHashMap<>();
+
+    private final File sdk;
+
+    private final long versionModified;
+
+    private final String version;
+
+    private final Map<String, File> executables = new HashMap<>();
+
+    private final Map<String, Set<String>> flags = new HashMap<>();
+
+    private SdkDescriptor(final File sdk, final long versionModified, final String version) {
+        this.sdk = sdk;
+        this.versionModified = versionModified;
+        this.version = version;
+    }
+
+    /**
+     * The descriptor of the given sdk, probed only if neither the memory nor the disk cache knows the sdk.
+     *
+     * @param cacheDirectory the directory descriptors are cached in, null to probe once per jvm
+     */
+    public static SdkDescriptor load(final File sdk, final File cacheDirectory) {
+        final File versionFile = new File(sdk, "version");
+        if (!versionFile.isFile()) {
+            throw new IllegalArgumentException("Dart version file missing. Configuration error for dartSdk? dartSdk="
+                + sdk.getAbsolutePath());
+        }
+        final long versionModified = versionFile.lastModified();
+        final String key = sdk.getAbsolutePath() + "@" + versionModified;
+
+        SdkDescriptor descriptor = DESCRIPTORS.get(key);
+        if (descriptor != null) {
+            return descriptor;
+        }
+        final File cacheFile = cacheDirectory == null ? null : new File(cacheDirectory,
+            Hashing.sha256().hashString(sdk.getAbsolutePath(), StandardCharsets.UTF_8).toString() + ".properties");
+        descriptor = read(cacheFile, sdk, versionModified);
+        if (descriptor == null) {
+            descriptor = probe(sdk, versionModified, readVersion(versionFile));
+            if (cacheFile != null) {
+                try {
+                    descriptor.save(cacheFile);
+                } catch (final IOException e) {
+                    // probed again by the next build
+                }
+            }
+        }
+        DESCRIPTORS.put(key, descriptor);
+        return descriptor;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * The executable of the given tool, whether it exists or not.
+     */
+    public File getExecutable(final String tool) {
+        final File executable = executables.get(tool);
+        return executable != null ? executable : new File(sdk, "bin/" + tool + executableSuffix(tool));
+    }
+
+    /**
+     * Whether the given tool accepts the given flag. Everything is assumed to be supported if the help of the tool
+     * could not be read.
+     *
+     * @param flag the flag, anything after a <code>=</code> is ignored
+     */
+    public boolean supports(final String tool, final String flag) {
+        final Set<String> toolFlags = flags.get(tool);
+        if (toolFlags == null || toolFlags.isEmpty()) {
+            return true;
+        }
+        final int value = flag.indexOf('=');
+        return toolFlags.contains(value < 0 ? flag : flag.substring(0, value));
+    }
+
+    /**
+     * The flags mentioned in the given help output.
+     */
+    static Set<String> parseFlags(final String help) {
+        final Set<String> result = new TreeSet<>();
+        final Matcher matcher = FLAG.matcher(help);
+        while (matcher.find()) {
+            final String dashes = matcher.group(1);
+            final String name = matcher.group(3);
+            if (dashes.length() == 1 && name.length() > 1) {
+                // not an option, e.g. a negative number or a hyphenated word at a line break
+                continue;
+            }
+            result.add(dashes + name);
+            if (matcher.group(2) != null) {
+                result.add(dashes + "no-" + name);
+            }
+        }
+        return result;
+    }
+
+    private static SdkDescriptor probe(final File sdk, final long versionModified, final String version) {
+        final SdkDescriptor descriptor = new SdkDescriptor(sdk, versionModified, version);
+        for (final String tool : new String[]{DART, DART2JS, PUB}) {
+            final File executable = new File(sdk, "bin/" + tool + executableSuffix(tool));
+            if (executable.canExecute()) {
+                descriptor.executables.put(tool, executable);
+            }
+        }
+        for (final String tool : PROBED_TOOLS) {
+            final File executable = descriptor.executables.get(tool);
+            if (executable != null) {
+                descriptor.flags.put(tool, parseFlags(readHelp(executable)));
+            }
+        }
+        return descriptor;
+    }
+
+    private static String readHelp(final File executable) {
+        final Commandline cl = new Commandline();
+        cl.setExecutable(executable.getAbsolutePath());
+        cl.createArg().setValue("--help");
+        cl.createArg().setValue("--verbose");
+        final StringBuilder help = new StringBuilder();
+        final StreamConsumer consumer = new StreamConsumer() {
+            @Override
+            public void consumeLine(final String line) {
+                synchronized (help) {
+                    help.append(line).append('\n');
+                }
+            }
+        };
+        try {
+            // the help is printed with a non zero exit code by some versions
+            CommandLineUtils.executeCommandLine(cl, consumer, consumer, PROBE_TIMEOUT_SECONDS);
+        } catch (final CommandLineException e) {
+            return "";
+        }
+        synchronized (help) {
+            return help.toString();
+        }
+    }
+
+    private static String readVersion(final File versionFile) {
+        try (BufferedReader in = new BufferedReader(new FileReader(versionFile))) {
+            final String dartVersion = in.readLine();
+            if (StringUtils.isEmpty(dartVersion)) {
+                throw new NullPointerException("Unable to read dart version. Configuration error for dartSdk?");
+            }
+            return dartVersion.trim();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read dart version. Configuration error for dartSdk?", e);
+        }
+    }
+
+    private static String executableSuffix(final String tool) {
+        if (!OsUtil.isWindows()) {
+            return "";
+        }
+        return DART.equals(tool) ? ".exe" : ".bat";
+    }
+
+    /**
+     * The cached descriptor, null if there is none for the sdk in its current version.
+     */
+    private static SdkDescriptor read(final File cacheFile, final File sdk, final long versionModified) {
+        if (cacheFile == null || !cacheFile.isFile()) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(cacheFile)) {
+            properties.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+        if (!sdk.getAbsolutePath().equals(properties.getProperty("sdk"))
+            || !String.valueOf(versionModified).equals(properties.getProperty("versionModified"))
+            || StringUtils.isEmpty(properties.getProperty("version"))) {
+            return null;
+        }
+        final SdkDescriptor descriptor = new SdkDescriptor(sdk, versionModified, properties.getProperty("version"));
+        for (final String name : properties.stringPropertyNames()) {
+            if (name.startsWith("executable.")) {
+                descriptor.executables.put(name.substring("executable.".length()),
+                    new File(properties.getProperty(name)));
+            } else if (name.startsWith("flags.")) {
+                final Set<String> toolFlags = new TreeSet<>();
+                for (final String flag : Splitter.on(' ').omitEmptyStrings().split(properties.getProperty(name))) {
+                    toolFlags.add(flag);
+                }
+                descriptor.flags.put(name.substring("flags.".length()), toolFlags);
+            }
+        }
+        return descriptor;
+    }
+
+    /**
+     * Write the descriptor. Concurrent builds write the same content, see {@link FileUtil#replaceAtomically}.
+     */
+    private void save(final File cacheFile) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("sdk", sdk.getAbsolutePath());
+        properties.setProperty("versionModified", String.valueOf(versionModified));
+        properties.setProperty("version", version);
+        for (final Map.Entry<String, File> executable : executables.entrySet()) {
+            properties.setProperty("executable." + executable.getKey(), executable.getValue().getAbsolutePath());
+        }
+        for (final Map.Entry<String, Set<String>> toolFlags : flags.entrySet()) {
+            properties.setProperty("flags." + toolFlags.getKey(), Joiner.on(' ').join(toolFlags.getValue()));
+        }
+        final File parent = cacheFile.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory '" + parent.getAbsolutePath() + "'.");
+        }
+        final File temp = Files.createTempFile(parent.toPath(), cacheFile.getName(), ".tmp").toFile();
+        try {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                properties.store(out, null);
+            }
+            FileUtil.replaceAtomically(temp, cacheFile);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.google.dart.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Deterministic distribution of weighted items, e.g. test files weighted by their duration, over a number of
+ * shards.
+ */
+public final class Sharding {
+
+    private Sharding() {
+    }
+
+    /**
+     * Distribute the items with the longest processing time first rule: items are sorted by descending weight,
+     * ties by name, and each is assigned to the shard with the lowest total weight so far, ties to the lowest
+     * shard index. Equal weights result in a round robin distribution of the sorted items.
+     *
+     * @return the items of every shard, indexed from 0 to shardCount - 1
+     */
+    public static List<TreeSet<String>> distribute(final Map<String, Long> weights, final int shardCount) {
+        final List<Map.Entry<String, Long>> items = new ArrayList<>(weights.entrySet());
+        Collections.sort(items, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(final Map.Entry<String, Long> i1, final Map.Entry<String, Long> i2) {
+                final int byWeight = Long.compare(i2.getValue(), i1.getValue());
+                return byWeight != 0 ? byWeight : i1.getKey().compareTo(i2.getKey());
+            }
+        });
+
+        final List<TreeSet<String>> shards = new ArrayList<>(shardCount);
+        final long[] loads = new long[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new TreeSet<String>());
+        }
+        for (final Map.Entry<String, Long> item : items) {
+            int lightest = 0;
+            for (int i = 1; i < shardCount; i++) {
+                if (loads[i] < loads[lightest]) {
+                    lightest = i;
+                }
+            }
+            shards.get(lightest).add(item.getKey());
+            loads[lightest] += item.getValue();
+        }
+        return shards;
+    }
+}
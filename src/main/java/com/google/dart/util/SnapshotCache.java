@@ -0,0 +1,110 @@
+package com.google.dart.util;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * App-JIT snapshots of dart scripts, so a script run again skips parsing and warming up its code.
+ * <p/>
+ * A snapshot is keyed by the content of the script and all sources it transitively imports, the package
+ * configuration of its package root, the sdk version and the vm arguments. Only the snapshot of the current key is
+ * kept per script.
+ */
+public class SnapshotCache {
+
+    private static final String SUFFIX = ".snapshot";
+
+    private static final String[] PACKAGE_CONFIGURATIONS =
+        {"pubspec.lock", ".packages", ".dart_tool/package_config.json"};
+
+    private final File directory;
+
+    private final FileHashes fileHashes = new FileHashes();
+
+    /**
+     * @param directory the directory the snapshots are kept in, created on demand
+     */
+    public SnapshotCache(final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * The key of the given script in its current state.
+     *
+     * @param packageRoot the package root resolving the <code>package:</code> imports of the script
+     */
+    public String computeKey(final File script, final File packageRoot, final String dartVersion,
+        final List<String> vmArguments) throws IOException {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(dartVersion, StandardCharsets.UTF_8).putChar('\n');
+        for (final String vmArgument : vmArguments) {
+            hasher.putString(vmArgument, StandardCharsets.UTF_8).putChar('\n');
+        }
+        for (final String configuration : PACKAGE_CONFIGURATIONS) {
+            final File file = new File(packageRoot, configuration);
+            if (file.isFile()) {
+                hasher.putString(configuration, StandardCharsets.UTF_8).putChar('=')
+                    .putString(fileHashes.hash(file), StandardCharsets.UTF_8).putChar('\n');
+            }
+        }
+        final List<File> sources = new ArrayList<>(new DartImportGraph(packageRoot).getTransitiveSources(script));
+        Collections.sort(sources);
+        for (final File source : sources) {
+            hasher.putString(source.getAbsolutePath(), StandardCharsets.UTF_8).putChar('=')
+                .putString(fileHashes.hash(source), StandardCharsets.UTF_8).putChar('\n');
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * The snapshot of the given script and key, null if there is none.
+     *
+     * @param name a name unique per script
+     */
+    public File get(final String name, final String key) {
+        final File snapshot = getSnapshotFile(name, key);
+        return snapshot.isFile() ? snapshot : null;
+    }
+
+    /**
+     * A new file for a training run to write a snapshot to, to be passed to {@link #store(String, String, File)}.
+     */
+    public File createTemporaryFile(final String name) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory '" + directory.getAbsolutePath() + "'.");
+        }
+        return Files.createTempFile(directory.toPath(), name + ".", ".tmp").toFile();
+    }
+
+    /**
+     * Publish the snapshot written by a training run and delete the outdated snapshots of the script.
+     */
+    public void store(final String name, final String key, final File temporaryFile) throws IOException {
+        final File snapshot = getSnapshotFile(name, key);
+        FileUtil.replaceAtomically(temporaryFile, snapshot);
+        final File[] outdated = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.getName().startsWith(name + ".") && file.getName().endsWith(SUFFIX)
+                    && !file.equals(snapshot);
+            }
+        });
+        for (final File file : outdated == null ? Collections.<File>emptyList() : Arrays.asList(outdated)) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private File getSnapshotFile(final String name, final String key) {
+        return new File(directory, name + "." + key + SUFFIX);
+    }
+}
@@ -0,0 +1,64 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Helpers for the source maps dart2js writes next to the javascript.
+ */
+public final class SourceMaps {
+
+    public static final String SUFFIX = ".map";
+
+    private static final Pattern SOURCES = Pattern.compile("(\"sources\"\\s*:\\s*\\[)([^\\]]*)(\\])");
+
+    private static final Pattern SOURCE_ROOT = Pattern.compile("\"sourceRoot\"\\s*:\\s*\"([^\"]*)\"");
+
+    private static final Pattern STRING = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    private static final Pattern ABSOLUTE = Pattern.compile("^(?:[a-zA-Z][a-zA-Z0-9+.-]*:|/).*");
+
+    private SourceMaps() {
+    }
+
+    /**
+     * Rewrite the relative paths of the sources of a source map written to the given directory, so the source map
+     * can be moved to another directory. Absolute paths and uris, e.g. of the dart-sdk, are kept, and so are the
+     * sources of maps with a source root, which resolve against the source root only.
+     *
+     * @param sourceMap the json of the source map
+     * @param from      the directory the source map was written to
+     * @param to        the directory the source map is moved to
+     */
+    public static String relocate(final String sourceMap, final File from, final File to) {
+        final Matcher sourceRoot = SOURCE_ROOT.matcher(sourceMap);
+        if (sourceRoot.find() && !sourceRoot.group(1).isEmpty()) {
+            return sourceMap;
+        }
+        final Path offset = to.getAbsoluteFile().toPath().normalize()
+            .relativize(from.getAbsoluteFile().toPath().normalize());
+        if (offset.toString().isEmpty()) {
+            return sourceMap;
+        }
+        final Matcher sources = SOURCES.matcher(sourceMap);
+        if (!sources.find()) {
+            return sourceMap;
+        }
+        final StringBuffer relocated = new StringBuffer();
+        final Matcher source = STRING.matcher(sources.group(2));
+        while (source.find()) {
+            final String path = source.group(1);
+            final String replacement = ABSOLUTE.matcher(path).matches() || path.indexOf('\\') >= 0 ? path
+                : toUriPath(offset.resolve(path).normalize());
+            source.appendReplacement(relocated, Matcher.quoteReplacement("\"" + replacement + "\""));
+        }
+        source.appendTail(relocated);
+        return sourceMap.substring(0, sources.start(2)) + relocated + sourceMap.substring(sources.end(2));
+    }
+
+    private static String toUriPath(final Path path) {
+        return path.toString().replace(File.separatorChar, '/').replace(" ", "%20");
+    }
+}
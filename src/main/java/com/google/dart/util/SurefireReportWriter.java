@@ -0,0 +1,124 @@
+package com.google.dart.util;
+
+import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
+import org.codehaus.plexus.util.xml.XMLWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes test results as surefire compatible xml reports, one <code>TEST-&lt;suite&gt;.xml</code> file per test
+ * suite, so they are picked up by the usual surefire report tooling and CI servers.
+ */
+public class SurefireReportWriter {
+
+    private final File reportsDirectory;
+
+    public SurefireReportWriter(final File reportsDirectory) {
+        this.reportsDirectory = reportsDirectory;
+    }
+
+    /**
+     * Write the reports of all suites of the given results.
+     */
+    public void write(final List<TestResult> results) throws IOException {
+        final Map<String, List<TestResult>> suites = new TreeMap<>();
+        for (final TestResult result : results) {
+            List<TestResult> suite = suites.get(result.getSuite());
+            if (suite == null) {
+                suite = new ArrayList<>();
+                suites.put(result.getSuite(), suite);
+            }
+            suite.add(result);
+        }
+        if (!reportsDirectory.isDirectory() && !reportsDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory '" + reportsDirectory.getAbsolutePath() + "'.");
+        }
+        for (final Map.Entry<String, List<TestResult>> suite : suites.entrySet()) {
+            writeSuite(toClassName(suite.getKey()), suite.getValue());
+        }
+    }
+
+    private void writeSuite(final String className, final List<TestResult> results) throws IOException {
+        int failures = 0;
+        int errors = 0;
+        int skipped = 0;
+        long duration = 0;
+        for (final TestResult result : results) {
+            failures += result.getStatus() == TestResult.Status.FAILED ? 1 : 0;
+            errors += result.getStatus() == TestResult.Status.ERROR ? 1 : 0;
+            skipped += result.getStatus() == TestResult.Status.SKIPPED ? 1 : 0;
+            duration += result.getDurationMillis();
+        }
+
+        final File report = new File(reportsDirectory, "TEST-" + className + ".xml");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(report), StandardCharsets.UTF_8)) {
+            final XMLWriter xml = new PrettyPrintXMLWriter(out, "UTF-8", null);
+            xml.startElement("testsuite");
+            xml.addAttribute("name", className);
+            xml.addAttribute("tests", String.valueOf(results.size()));
+            xml.addAttribute("failures", String.valueOf(failures));
+            xml.addAttribute("errors", String.valueOf(errors));
+            xml.addAttribute("skipped", String.valueOf(skipped));
+            xml.addAttribute("time", seconds(duration));
+            for (final TestResult result : results) {
+                xml.startElement("testcase");
+                xml.addAttribute("name", result.getName());
+                xml.addAttribute("classname", className);
+                xml.addAttribute("time", seconds(result.getDurationMillis()));
+                switch (result.getStatus()) {
+                    case FAILED:
+                        writeProblem(xml, "failure", result);
+                        break;
+                    case ERROR:
+                        writeProblem(xml, "error", result);
+                        break;
+                    case SKIPPED:
+                        xml.startElement("skipped");
+                        xml.endElement();
+                        break;
+                    default:
+                        break;
+                }
+                if (!StringUtils.isEmpty(result.getOutput())) {
+                    xml.startElement("system-out");
+                    xml.writeText(result.getOutput());
+                    xml.endElement();
+                }
+                xml.endElement();
+            }
+            xml.endElement();
+        }
+    }
+
+    private static void writeProblem(final XMLWriter xml, final String element, final TestResult result) {
+        final String message = StringUtils.isEmpty(result.getMessage()) ? "" : result.getMessage();
+        xml.startElement(element);
+        xml.addAttribute("message", message.split("\n", 2)[0]);
+        xml.writeText(message);
+        xml.endElement();
+    }
+
+    /**
+     * A java like class name for a dart test file, e.g. <code>test.range_test</code> for
+     * <code>test/range_test.dart</code>.
+     */
+    static String toClassName(final String suite) {
+        final String withoutExtension = suite.endsWith(".dart") ? suite.substring(0, suite.length() - 5) : suite;
+        return withoutExtension.replace('\\', '.').replace('/', '.');
+    }
+
+    private static String seconds(final long millis) {
+        return String.format(Locale.ENGLISH, "%.3f", millis / 1000.0);
+    }
+}
@@ -0,0 +1,191 @@
+package com.google.dart.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The cpu and memory available to this build, honouring the limits of a linux container (cgroup v1 and v2).
+ * <p/>
+ * Everything is read from <code>/proc</code> and <code>/sys/fs/cgroup</code>; on other systems the values of the jvm
+ * are used, and memory is reported as unknown.
+ */
+public final class SystemResources {
+
+    /**
+     * Returned for memory sizes which can't be determined.
+     */
+    public static final long UNKNOWN = -1;
+
+    private static final File CGROUP = new File("/sys/fs/cgroup");
+
+    private static final File MEMINFO = new File("/proc/meminfo");
+
+    private SystemResources() {
+    }
+
+    /**
+     * The number of cpus available, limited by the cpu quota of the container, if any.
+     */
+    public static int getAvailableProcessors() {
+        return getAvailableProcessors(CGROUP, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * The given number of cpus, limited by the cpu quota of the cgroup mounted at the given directory.
+     */
+    static int getAvailableProcessors(final File cgroup, final int processors) {
+        long quota = UNKNOWN;
+        long period = UNKNOWN;
+        // cgroup v2: "<quota> <period>" or "max <period>"
+        final String cpuMax = readFirstLine(new File(cgroup, "cpu.max"));
+        if (cpuMax != null) {
+            final String[] values = cpuMax.trim().split("\\s+");
+            if (values.length == 2) {
+                quota = parseLong(values[0]);
+                period = parseLong(values[1]);
+            }
+        } else {
+            quota = parseLong(readFirstLine(new File(cgroup, "cpu/cpu.cfs_quota_us")));
+            period = parseLong(readFirstLine(new File(cgroup, "cpu/cpu.cfs_period_us")));
+        }
+        if (quota > 0 && period > 0) {
+            return (int) Math.max(1, Math.min(processors, (quota + period - 1) / period));
+        }
+        return processors;
+    }
+
+    /**
+     * The total memory in bytes, limited by the memory limit of the container, if any.
+     */
+    public static long getMemoryLimit() {
+        return getMemoryLimit(CGROUP, readMeminfo("MemTotal:"));
+    }
+
+    /**
+     * The given total memory, limited by the memory limit of the cgroup mounted at the given directory.
+     */
+    static long getMemoryLimit(final File cgroup, final long total) {
+        long limit = parseLong(readFirstLine(new File(cgroup, "memory.max")));
+        if (limit <= 0) {
+            limit = parseLong(readFirstLine(new File(cgroup, "memory/memory.limit_in_bytes")));
+        }
+        // cgroup v1 reports a huge number instead of "max" for no limit
+        if (limit > 0 && (total <= 0 || limit < total)) {
+            return limit;
+        }
+        return total;
+    }
+
+    /**
+     * The memory in bytes which can be used without swapping, e.g. by new processes.
+     */
+    public static long getAvailableMemory() {
+        return getAvailableMemory(CGROUP, readMeminfo("MemTotal:"), readMeminfo("MemAvailable:"));
+    }
+
+    /**
+     * The given available memory, limited by the memory left to the cgroup mounted at the given directory.
+     */
+    static long getAvailableMemory(final File cgroup, final long total, final long available) {
+        final long limit = getMemoryLimit(cgroup, total);
+        long usage = parseLong(readFirstLine(new File(cgroup, "memory.current")));
+        if (usage < 0) {
+            usage = parseLong(readFirstLine(new File(cgroup, "memory/memory.usage_in_bytes")));
+        }
+        if (limit > 0 && usage >= 0) {
+            final long containerAvailable = Math.max(0, limit - usage);
+            return available > 0 ? Math.min(available, containerAvailable) : containerAvailable;
+        }
+        return available;
+    }
+
+    /**
+     * The peak resident set size in bytes of the given process and its descendants, e.g. the vm started by a dart sdk
+     * script. Needs java 9 or later to determine process ids.
+     */
+    public static long getPeakResidentSetSize(final Process process) {
+        try {
+            final Method pid = Process.class.getMethod("pid");
+            final Method descendants = Process.class.getMethod("descendants");
+            final Method handlePid = Class.forName("java.lang.ProcessHandle").getMethod("pid");
+            long peak = readPeakResidentSetSize((Long) pid.invoke(process));
+            if (peak == UNKNOWN) {
+                return UNKNOWN;
+            }
+            for (final Object handle : ((Stream<?>) descendants.invoke(process)).toArray()) {
+                peak += Math.max(0, readPeakResidentSetSize((Long) handlePid.invoke(handle)));
+            }
+            return peak;
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * The current resident set size in bytes of the given process. Needs java 9 or later to determine the process id.
+     */
+    public static long getResidentSetSize(final Process process) {
+        try {
+            final Method pid = Process.class.getMethod("pid");
+            return readStatus((Long) pid.invoke(process), "VmRSS:");
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            return UNKNOWN;
+        }
+    }
+
+    private static long readPeakResidentSetSize(final long pid) {
+        return readStatus(pid, "VmHWM:");
+    }
+
+    private static long readStatus(final long pid, final String field) {
+        final long kilobytes = readField(new File("/proc/" + pid + "/status"), field);
+        return kilobytes == UNKNOWN ? UNKNOWN : kilobytes * 1024;
+    }
+
+    private static long readMeminfo(final String field) {
+        final long kilobytes = readField(MEMINFO, field);
+        return kilobytes == UNKNOWN ? UNKNOWN : kilobytes * 1024;
+    }
+
+    /**
+     * The number following the given field name, e.g. in a line like "VmHWM:  1234 kB".
+     */
+    private static long readField(final File file, final String field) {
+        for (final String line : readLines(file)) {
+            if (line.startsWith(field)) {
+                return parseLong(line.substring(field.length()).trim().split("\\s+")[0]);
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static String readFirstLine(final File file) {
+        final List<String> lines = readLines(file);
+        return lines.isEmpty() ? null : lines.get(0);
+    }
+
+    private static List<String> readLines(final File file) {
+        try {
+            return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (final IOException | RuntimeException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static long parseLong(final String value) {
+        if (value == null) {
+            return UNKNOWN;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (final NumberFormatException e) {
+            return UNKNOWN;
+        }
+    }
+}
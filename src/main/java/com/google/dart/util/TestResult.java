@@ -0,0 +1,74 @@
+package com.google.dart.util;
+
+/**
+ * The result of a single dart test.
+ */
+public class TestResult {
+
+    public enum Status {
+        PASSED, FAILED, ERROR, SKIPPED
+    }
+
+    private final String suite;
+
+    private final String name;
+
+    private final Status status;
+
+    private final long durationMillis;
+
+    private final String message;
+
+    private final String output;
+
+    /**
+     * @param suite          the path of the test file relative to its package root
+     * @param name           the name of the test within the test file
+     * @param status         the outcome of the test
+     * @param durationMillis the wall clock time the test took
+     * @param message        the error messages and stack traces of a failed test, may be empty
+     * @param output         everything the test printed, may be empty
+     */
+    public TestResult(final String suite, final String name, final Status status, final long durationMillis,
+        final String message, final String output) {
+        this.suite = suite;
+        this.name = name;
+        this.status = status;
+        this.durationMillis = durationMillis;
+        this.message = message;
+        this.output = output;
+    }
+
+    public String getSuite() {
+        return suite;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public boolean isSuccessful() {
+        return status == Status.PASSED || status == Status.SKIPPED;
+    }
+
+    @Override
+    public String toString() {
+        return suite + ": " + name + " " + status + " (" + durationMillis + "ms)";
+    }
+}
@@ -0,0 +1,41 @@
+package com.google.dart;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+@Test
+public class TestDartWebMojo {
+
+    @Test
+    public void testEntryDirectoriesOfPagesWithSameName() {
+        final File sourceDirectory = new File("/project/src/main/dart");
+        Assert.assertEquals(entryDirectory(sourceDirectory, "web/a/index.html"), "web/a/index");
+        Assert.assertEquals(entryDirectory(sourceDirectory, "web/b/index.html"), "web/b/index");
+        Assert.assertEquals(entryDirectory(sourceDirectory, "web/v1.0/page"), "web/v1.0/page");
+    }
+
+    @Test
+    public void testFindScripts() throws IOException {
+        final File web = Files.createTempDirectory("web").toFile();
+        final File html = new File(web, "index.html");
+        Files.write(html.toPath(), ("<html><body>\n"
+            + "<script type=\"application/dart\" src=\"main.dart\"></script>\n"
+            + "<SCRIPT SRC='../lib/app.dart' type='application/dart'></SCRIPT>\n"
+            + "<script src=\"packages/browser/dart.js\"></script>\n"
+            + "<script src=\"http://example.com/remote.dart\"></script>\n"
+            + "</body></html>\n").getBytes("UTF-8"));
+
+        Assert.assertEquals(DartWebMojo.findScripts(html), new TreeSet<>(Arrays.asList(
+            new File(web, "main.dart"), new File(web.getParentFile(), "lib/app.dart"))));
+    }
+
+    private static String entryDirectory(final File sourceDirectory, final String page) {
+        return DartWebMojo.toEntryDirectory(sourceDirectory, new File(sourceDirectory, page));
+    }
+}
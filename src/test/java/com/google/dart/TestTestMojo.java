@@ -0,0 +1,48 @@
+package com.google.dart;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+@Test
+public class TestTestMojo {
+
+    @Test
+    public void testSuitePathOfPackageRootBelowBasedir() throws IOException {
+        final File basedir = Files.createTempDirectory("basedir").toFile();
+        final File packageRoot = new File(basedir, "src/main/dart");
+        Assert.assertEquals(TestMojo.toSuitePath(basedir, new File(packageRoot, "test/a_test.dart")),
+            "src/main/dart/test/a_test.dart");
+    }
+
+    @Test
+    public void testSuitePathOfPackageRootEqualToBasedir() throws IOException {
+        final File basedir = Files.createTempDirectory("basedir").toFile();
+        Assert.assertEquals(TestMojo.toSuitePath(basedir, new File(basedir, "test/a_test.dart")), "test/a_test.dart");
+        Assert.assertEquals(TestMojo.toSuitePath(new File(basedir, "."), new File(basedir, "test/a_test.dart")),
+            "test/a_test.dart");
+    }
+
+    @Test
+    public void testScanForTestsSkipsPackagesDirectories() throws IOException {
+        final File packageRoot = Files.createTempDirectory("app").toFile();
+        final File test = touch(new File(packageRoot, "test/a_test.dart"));
+        final File helper = touch(new File(packageRoot, "test/util/helper.dart"));
+        touch(new File(packageRoot, "test/packages/dependency/dependency.dart"));
+        touch(new File(packageRoot, "lib/app.dart"));
+
+        Assert.assertEquals(TestMojo.scanForTests(packageRoot, TestMojo.DEFAULT_INCLUDES, TestMojo.DEFAULT_EXCLUDES),
+            new HashSet<>(Arrays.asList(test, helper)));
+    }
+
+    private static File touch(final File file) throws IOException {
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+        return file;
+    }
+}
@@ -0,0 +1,59 @@
+package com.google.dart;
+
+import org.codehaus.plexus.util.cli.Commandline;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+@Test
+public class TestWatchMojo {
+
+    @Test
+    public void testIgnored() {
+        Assert.assertTrue(WatchMojo.isIgnored(Paths.get("web/.dart_tool")));
+        Assert.assertTrue(WatchMojo.isIgnored(Paths.get("web/main.dart~")));
+        Assert.assertFalse(WatchMojo.isIgnored(Paths.get("web/main.dart")));
+        Assert.assertFalse(WatchMojo.isIgnored(Paths.get("lib/src")));
+    }
+
+    @Test
+    public void testAffectsPackages() throws IOException {
+        final File sources = Files.createTempDirectory("sources").toFile();
+        final File app = new File(sources, "app");
+        final File library = new File(sources, "library");
+        Assert.assertTrue(library.mkdirs());
+        Files.write(new File(library, "pubspec.yaml").toPath(), "name: library\n".getBytes("UTF-8"));
+        final Set<File> packageRoots = Collections.singleton(app);
+
+        Assert.assertFalse(WatchMojo.affectsPackages(changes(new File(app, "web/main.dart")), packageRoots));
+        Assert.assertTrue(WatchMojo.affectsPackages(changes(new File(app, "pubspec.yaml")), packageRoots),
+            "a changed pubspec");
+        Assert.assertTrue(WatchMojo.affectsPackages(changes(library), packageRoots), "a new package");
+        Assert.assertTrue(WatchMojo.affectsPackages(changes(app), packageRoots), "a removed package");
+    }
+
+    @Test
+    public void testTestCommandline() {
+        final Commandline base = new Commandline();
+        base.setExecutable("dart");
+        base.createArg().setValue("--checked");
+        final File testFile = new File("test/a_test.dart").getAbsoluteFile();
+
+        final Commandline cl = TestMojo.createTestCommandline(base, testFile);
+        Assert.assertEquals(Arrays.asList(cl.getArguments()),
+            Arrays.asList("--checked", testFile.getAbsolutePath()));
+        Assert.assertEquals(base.getArguments().length, 1, "the base command line is not changed");
+    }
+
+    private static Set<File> changes(final File... files) {
+        return new HashSet<>(Arrays.asList(files));
+    }
+}
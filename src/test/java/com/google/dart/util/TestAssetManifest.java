@@ -0,0 +1,37 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+@Test
+public class TestAssetManifest {
+
+    @Test
+    public void testFingerprintFollowsContent() throws IOException {
+        final File root = Files.createTempDirectory("assets").toFile();
+        final File js = new File(root, "web/main.dart.js");
+        Assert.assertTrue(js.getParentFile().mkdirs());
+        Files.write(js.toPath(), "main() {}".getBytes("UTF-8"));
+
+        final File copy = new AssetManifest(root).add(js);
+        Assert.assertTrue(AssetManifest.isFingerprinted(copy.getName()));
+        Assert.assertFalse(AssetManifest.isFingerprinted(js.getName()));
+        Assert.assertEquals(copy.getName().replaceAll("\\.[0-9a-f]{16}\\.", "."), "main.dart.js");
+        Assert.assertEquals(new AssetManifest(root).add(js), copy, "unchanged content keeps its name");
+
+        Files.write(js.toPath(), "main() { print(1); }".getBytes("UTF-8"));
+        final AssetManifest assets = new AssetManifest(root);
+        final File changed = assets.add(js);
+        Assert.assertNotEquals(changed, copy);
+        Assert.assertFalse(copy.exists(), "outdated copies are deleted");
+
+        final File manifest = new File(root, "asset-manifest.json");
+        assets.save(manifest);
+        Assert.assertEquals(new String(Files.readAllBytes(manifest.toPath()), "UTF-8"),
+            "{\n  \"web/main.dart.js\": \"web/" + changed.getName() + "\"\n}\n");
+    }
+}
@@ -0,0 +1,167 @@
+package com.google.dart.util;
+
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Test
+public class TestBatchCompilerPool {
+
+    /**
+     * Speaks the batch protocol: a line containing <code>fail</code> fails, <code>crash</code> crashes the compiler
+     * and <code>die</code> ends the process without an answer.
+     */
+    private static final String BATCH_COMPILER = "#!/bin/sh\n"
+        + "while read line; do\n"
+        + "  case \"$line\" in\n"
+        + "    *die*) exit 3 ;;\n"
+        + "    *crash*) echo '>>> TEST CRASH' ;;\n"
+        + "    *fail*) echo \"error in $line\"; echo 'warning' >&2; echo '>>> TEST FAIL' ;;\n"
+        + "    *) echo \"compiled $line\"; echo '>>> TEST OK' ;;\n"
+        + "  esac\n"
+        + "  echo '>>> EOF STDERR' >&2\n"
+        + "done\n";
+
+    @Test
+    public void testProtocol() throws Exception {
+        if (OsUtil.isWindows()) {
+            return;
+        }
+        final BatchCompilerPool pool = new BatchCompilerPool(createCommandline(), 0, 0, null);
+        try {
+            final List<String> out = new ArrayList<>();
+            final List<String> err = new ArrayList<>();
+            final List<String> arguments = Arrays.asList("-o", "main.js", "main.dart");
+            Assert.assertEquals(pool.compile(arguments, collect(out), collect(err)), 0);
+            Assert.assertEquals(out, Collections.singletonList("compiled -o main.js main.dart"));
+            Assert.assertTrue(err.isEmpty(), err.toString());
+
+            out.clear();
+            Assert.assertEquals(pool.compile(Collections.singletonList("fail.dart"), collect(out), collect(err)), 1);
+            Assert.assertEquals(out, Collections.singletonList("error in fail.dart"));
+            Assert.assertEquals(err, Collections.singletonList("warning"), "the markers are not passed on");
+            Assert.assertEquals(pool.getStatistics(), "1 compiler started, 0 replaced");
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testReplacesCrashedAndWornOutWorkers() throws Exception {
+        if (OsUtil.isWindows()) {
+            return;
+        }
+        final BatchCompilerPool pool = new BatchCompilerPool(createCommandline(), 2, 0, null);
+        final List<String> out = new ArrayList<>();
+        try {
+            Assert.assertEquals(pool.compile(Collections.singletonList("crash.dart"), collect(out), collect(out)),
+                BatchCompilerPool.EXIT_CODE_CRASH);
+            try {
+                pool.compile(Collections.singletonList("die.dart"), collect(out), collect(out));
+                Assert.fail("a compiler dying without an answer is an error");
+            } catch (final CommandLineException e) {
+                // expected
+            }
+            Assert.assertEquals(pool.compile(Collections.singletonList("a.dart"), collect(out), collect(out)), 0);
+            Assert.assertEquals(pool.compile(Collections.singletonList("b.dart"), collect(out), collect(out)), 0);
+            Assert.assertEquals(pool.getStatistics(), "3 compilers started, 3 replaced");
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testWorkersHoldPermits() throws Exception {
+        if (OsUtil.isWindows()) {
+            return;
+        }
+        final ProcessScheduler scheduler = new ProcessScheduler(1);
+        final ProcessScheduler other = scheduler.forOwner("other");
+        final BatchCompilerPool pool = new BatchCompilerPool(createCommandline(), 0, 0, scheduler);
+        final List<String> out = new ArrayList<>();
+        try {
+            Assert.assertEquals(pool.compile(Collections.singletonList("a.dart"), collect(out), collect(out)), 0);
+            Assert.assertFalse(other.tryAcquire(10, TimeUnit.MILLISECONDS), "the idle worker holds the permit");
+
+            final Thread waiting = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        other.acquire();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            waiting.setDaemon(true);
+            waiting.start();
+            final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (scheduler.getWaitingCount() == 0) {
+                Assert.assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+
+            // the idle worker compiles once more, then hands its permit over
+            Assert.assertEquals(pool.compile(Collections.singletonList("b.dart"), collect(out), collect(out)), 0);
+            waiting.join(TimeUnit.SECONDS.toMillis(10));
+            Assert.assertFalse(waiting.isAlive());
+            Assert.assertEquals(pool.getStatistics(), "1 compiler started, 0 replaced");
+            other.release();
+        } finally {
+            pool.close();
+        }
+        Assert.assertTrue(scheduler.tryAcquire(0, TimeUnit.MILLISECONDS), "no permit is leaked");
+    }
+
+    @Test
+    public void testCloseReleasesPermits() throws Exception {
+        if (OsUtil.isWindows()) {
+            return;
+        }
+        final ProcessScheduler scheduler = new ProcessScheduler(1);
+        final BatchCompilerPool pool = new BatchCompilerPool(createCommandline(), 0, 0, scheduler);
+        final List<String> out = new ArrayList<>();
+        Assert.assertEquals(pool.compile(Collections.singletonList("a.dart"), collect(out), collect(out)), 0);
+        pool.close();
+        Assert.assertTrue(scheduler.tryAcquire(0, TimeUnit.MILLISECONDS));
+        scheduler.release();
+        try {
+            pool.compile(Collections.singletonList("b.dart"), collect(out), collect(out));
+            Assert.fail("a closed pool starts no workers");
+        } catch (final CommandLineException e) {
+            // expected
+        }
+    }
+
+    private static Commandline createCommandline() throws IOException {
+        final File script = Files.createTempFile("batch-compiler", ".sh").toFile();
+        script.deleteOnExit();
+        Files.write(script.toPath(), BATCH_COMPILER.getBytes("UTF-8"));
+        final Commandline cl = new Commandline();
+        cl.setExecutable("/bin/sh");
+        cl.createArg().setValue(script.getAbsolutePath());
+        return cl;
+    }
+
+    private static StreamConsumer collect(final List<String> lines) {
+        return new StreamConsumer() {
+            @Override
+            public void consumeLine(final String line) {
+                synchronized (lines) {
+                    lines.add(line);
+                }
+            }
+        };
+    }
+}
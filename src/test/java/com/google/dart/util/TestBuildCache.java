@@ -0,0 +1,108 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@Test
+public class TestBuildCache {
+
+    @Test
+    public void testRestoreLinksArtifacts() throws IOException {
+        final File root = Files.createTempDirectory("cache").toFile();
+        final BuildCache cache = new BuildCache(new File(root, "cache"), 1024 * 1024);
+        final File js = write(new File(root, "out/main.dart.js"), "main();");
+        final File map = write(new File(root, "out/main.dart.js.map"), "{}");
+        cache.store("key", Arrays.asList(js, map));
+
+        final File target = new File(root, "restored");
+        Assert.assertTrue(cache.restore("key", target));
+        Assert.assertEquals(read(new File(target, "main.dart.js")), "main();");
+        Assert.assertEquals(read(new File(target, "main.dart.js.map")), "{}");
+        if (!OsUtil.isWindows()) {
+            Assert.assertTrue(Files.isSameFile(new File(target, "main.dart.js").toPath(),
+                new File(root, "cache/key/main.dart.js").toPath()), "restored as hard link");
+        }
+
+        Assert.assertFalse(cache.restore("other", target));
+        Assert.assertEquals(cache.getHits(), 1);
+        Assert.assertEquals(cache.getMisses(), 1);
+        Assert.assertEquals(cache.getStores(), 1);
+        Assert.assertEquals(cache.getRestoredBytes(), 9);
+    }
+
+    @Test
+    public void testConcurrentStoresKeepOneCompleteEntry() throws Exception {
+        final File root = Files.createTempDirectory("cache").toFile();
+        final BuildCache cache = new BuildCache(new File(root, "cache"), 1024 * 1024);
+        final int builds = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(builds);
+        try {
+            final List<Future<Void>> stores = new ArrayList<>();
+            for (int i = 0; i < builds; i++) {
+                final File js = write(new File(root, "build" + i + "/main.dart.js"), "build " + i);
+                final File map = write(new File(root, "build" + i + "/main.dart.js.map"), "map " + i);
+                stores.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        cache.store("key", Arrays.asList(js, map));
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (final Future<Void> store : stores) {
+                store.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(new File(root, "cache").list(), new String[]{"key"}, "no staging directories are left");
+        final String js = read(new File(root, "cache/key/main.dart.js"));
+        final String map = read(new File(root, "cache/key/main.dart.js.map"));
+        Assert.assertEquals(map, js.replace("build", "map"), "the artifacts of one build only");
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        final File root = Files.createTempDirectory("cache").toFile();
+        final File directory = new File(root, "cache");
+        final BuildCache cache = new BuildCache(directory, 25);
+        cache.store("a", Collections.singletonList(write(new File(root, "a/a.js"), "0123456789")));
+        cache.store("b", Collections.singletonList(write(new File(root, "b/b.js"), "0123456789")));
+        final long now = System.currentTimeMillis();
+        Assert.assertTrue(new File(directory, "a").setLastModified(now - 20000));
+        Assert.assertTrue(new File(directory, "b").setLastModified(now - 10000));
+        Assert.assertTrue(cache.restore("a", new File(root, "restored")), "a is used again");
+
+        cache.store("c", Collections.singletonList(write(new File(root, "c/c.js"), "0123456789")));
+        Assert.assertTrue(new File(directory, "a").isDirectory());
+        Assert.assertFalse(new File(directory, "b").exists(), "the least recently used entry is evicted");
+        Assert.assertTrue(new File(directory, "c").isDirectory());
+    }
+
+    private static File write(final File file, final String content) throws IOException {
+        Assert.assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    }
+}
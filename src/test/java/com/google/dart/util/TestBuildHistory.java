@@ -0,0 +1,46 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+@Test
+public class TestBuildHistory {
+
+    @Test
+    public void testMergesShards() throws IOException {
+        final File directory = Files.createTempDirectory("timings").toFile();
+        final BuildHistory shard0 = BuildHistory.create(new File(directory, "shard-0.properties"));
+        shard0.put("test/a_test.dart", 100);
+        shard0.save();
+        final BuildHistory shard1 = BuildHistory.create(new File(directory, "shard-1.properties"));
+        shard1.put("test/b_test.dart", 300);
+        shard1.save();
+
+        final BuildHistory merged = BuildHistory.merge(directory);
+        Assert.assertEquals(merged.get("test/a_test.dart"), Long.valueOf(100));
+        Assert.assertEquals(merged.get("test/b_test.dart"), Long.valueOf(300));
+        Assert.assertEquals(merged.getAverage(), 200);
+
+        Assert.assertEquals(BuildHistory.merge(new File(directory, "shard-1.properties")).get("test/b_test.dart"),
+            Long.valueOf(300));
+        Assert.assertTrue(BuildHistory.merge(null).isEmpty());
+    }
+
+    @Test
+    public void testCreateIgnoresPreviousValues() throws IOException {
+        final File file = Files.createTempFile("timings", ".properties").toFile();
+        final BuildHistory previous = BuildHistory.create(file);
+        previous.put("test/a_test.dart", 100);
+        previous.save();
+
+        final BuildHistory next = BuildHistory.create(file);
+        next.put("test/b_test.dart", 200);
+        next.save();
+        Assert.assertNull(BuildHistory.load(file).get("test/a_test.dart"));
+        Assert.assertEquals(BuildHistory.load(file).get("test/b_test.dart"), Long.valueOf(200));
+    }
+}
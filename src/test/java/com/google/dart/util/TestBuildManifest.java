@@ -0,0 +1,43 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@Test
+public class TestBuildManifest {
+
+    @Test
+    public void testUpToDateAfterReload() throws IOException {
+        final File directory = Files.createTempDirectory("manifest").toFile();
+        final File source = new File(directory, "main.dart");
+        Files.write(source.toPath(), "void main() {}".getBytes("UTF-8"));
+        final File file = new File(directory, "manifest.yaml");
+
+        final BuildManifest manifest = BuildManifest.load(file);
+        final List<String> arguments = Arrays.asList("--minify", "-oweb/main.dart.js", "web/main.dart");
+        final Map<String, String> sources =
+            Collections.singletonMap("web/main.dart", manifest.getFileHashes().hash(source));
+        Assert.assertFalse(manifest.isUpToDate("web/main.dart.js", "1.12.0", arguments, sources));
+        manifest.record("web/main.dart.js", "1.12.0", arguments, sources);
+        manifest.save();
+
+        final BuildManifest reloaded = BuildManifest.load(file);
+        Assert.assertTrue(reloaded.isUpToDate("web/main.dart.js", "1.12.0", arguments, sources));
+        Assert.assertFalse(reloaded.isUpToDate("web/main.dart.js", "1.13.0", arguments, sources));
+        Assert.assertFalse(reloaded.isUpToDate("web/main.dart.js", "1.12.0",
+            Arrays.asList("-oweb/main.dart.js", "web/main.dart"), sources));
+
+        // a touched but unchanged source keeps its hash
+        Assert.assertTrue(source.setLastModified(source.lastModified() + 10000));
+        Assert.assertEquals(reloaded.getFileHashes().hash(source), sources.get("web/main.dart"));
+    }
+
+}
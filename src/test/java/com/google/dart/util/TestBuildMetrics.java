@@ -0,0 +1,39 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+@Test
+public class TestBuildMetrics {
+
+    @Test
+    public void testSaveAndSummarize() throws IOException {
+        final BuildMetrics metrics = new BuildMetrics();
+        metrics.phase("discovery", System.currentTimeMillis());
+        metrics.process("dart2js", "web/main.dart", 2500, 0, 1024);
+        metrics.process("dart2js", "web/\"quoted\".dart", 300, 1, 0);
+        metrics.skipped("dart2js", "web/other.dart", "up to date");
+
+        final File file = new File(Files.createTempDirectory("metrics").toFile(), "target/dart2js.json");
+        metrics.save(file, "dart2js");
+        final String json = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        Assert.assertTrue(json.contains("\"goal\": \"dart2js\""));
+        Assert.assertTrue(json.contains("{\"name\": \"discovery\", \"durationMillis\": "));
+        Assert.assertTrue(json.contains("{\"phase\": \"dart2js\", \"name\": \"web/main.dart\","
+            + " \"durationMillis\": 2500, \"exitCode\": 0, \"outputBytes\": 1024, \"skipped\": false,"
+            + " \"reason\": null}"));
+        Assert.assertTrue(json.contains("\"name\": \"web/\\\"quoted\\\".dart\""));
+        Assert.assertTrue(json.contains("\"exitCode\": null, \"outputBytes\": 0, \"skipped\": true,"
+            + " \"reason\": \"up to date\"}"));
+
+        final List<String> summary = metrics.summarize();
+        Assert.assertEquals(summary.size(), 5, summary.toString());
+        Assert.assertTrue(summary.get(2).matches("dart2js +0ms +2 +1 +1 +2\\.8s"), summary.get(2));
+        Assert.assertEquals(summary.get(3), "slowest dart2js: web/main.dart 2.5s");
+    }
+}
@@ -0,0 +1,44 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+@Test
+public class TestDartImportGraph {
+
+    @Test
+    public void testParseDirectives() {
+        Assert.assertEquals(DartImportGraph.parseDirectives(
+                "library a;\n"
+                    + "import 'dart:async';\n"
+                    + "import \"b.dart\" as b;\n"
+                    + "// import 'commented.dart';\n"
+                    + "export 'c.dart' if (dart.library.html) 'd.dart';\n"
+                    + "part 'e.dart';\n"
+                    + "part of a;\n"),
+            Arrays.asList("dart:async", "b.dart", "c.dart", "d.dart", "e.dart"));
+    }
+
+    @Test
+    public void testTransitiveSources() {
+        final File packageRoot = new File(getClass().getResource("graph").getFile());
+        final DartImportGraph graph = new DartImportGraph(packageRoot);
+
+        final Set<File> expected = new HashSet<>(Arrays.asList(
+            new File(packageRoot, "web/main.dart"),
+            new File(packageRoot, "lib/graph.dart"),
+            new File(packageRoot, "lib/src/node.dart"),
+            new File(packageRoot, "lib/src/io_node.dart"),
+            new File(packageRoot, "lib/src/edge.dart")));
+        Assert.assertEquals(graph.getTransitiveSources(new File(packageRoot, "web/main.dart")), expected);
+
+        Assert.assertEquals(graph.getTransitiveSources(new File(packageRoot, "web/other.dart")),
+            new HashSet<>(Arrays.asList(new File(packageRoot, "web/other.dart"))));
+    }
+
+}
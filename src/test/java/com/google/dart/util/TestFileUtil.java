@@ -0,0 +1,30 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+@Test
+public class TestFileUtil {
+
+    @Test
+    public void testReplaceAtomically() throws IOException {
+        final File directory = Files.createTempDirectory("replace").toFile();
+        final File target = new File(directory, "manifest.yaml");
+        final File temp = new File(directory, "manifest.yaml.tmp");
+        Files.write(target.toPath(), "old".getBytes("UTF-8"));
+        Files.write(temp.toPath(), "new".getBytes("UTF-8"));
+
+        FileUtil.replaceAtomically(temp, target);
+        Assert.assertEquals(new String(Files.readAllBytes(target.toPath()), "UTF-8"), "new");
+        Assert.assertFalse(temp.exists());
+
+        Files.write(temp.toPath(), "created".getBytes("UTF-8"));
+        final File created = new File(directory, "created.yaml");
+        FileUtil.replaceAtomically(temp, created);
+        Assert.assertEquals(new String(Files.readAllBytes(created.toPath()), "UTF-8"), "created");
+    }
+}
@@ -0,0 +1,47 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+@Test
+public class TestFingerprints {
+
+    @Test
+    public void testMatchesAfterReload() throws IOException {
+        final File file = new File(Files.createTempDirectory("fingerprints").toFile(), "target/pub.properties");
+        final Fingerprints fingerprints = Fingerprints.load(file);
+        Assert.assertFalse(fingerprints.matches("app", "1234"), "a missing file is an empty store");
+
+        fingerprints.put("app", "1234");
+        fingerprints.put("lib/with spaces=and:colons", "5678");
+        fingerprints.save();
+        Assert.assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        final Fingerprints reloaded = Fingerprints.load(file);
+        Assert.assertTrue(reloaded.matches("app", "1234"));
+        Assert.assertFalse(reloaded.matches("app", "4321"));
+        Assert.assertTrue(reloaded.matches("lib/with spaces=and:colons", "5678"));
+
+        Assert.assertEquals(reloaded.keys(),
+            new HashSet<>(Arrays.asList("app", "lib/with spaces=and:colons")));
+
+        reloaded.remove("app");
+        reloaded.save();
+        Assert.assertFalse(Fingerprints.load(file).matches("app", "1234"));
+        Assert.assertEquals(Fingerprints.load(file).keys(), Collections.singleton("lib/with spaces=and:colons"));
+    }
+
+    @Test
+    public void testCorruptFileIsEmpty() throws IOException {
+        final File file = Files.createTempFile("fingerprints", ".properties").toFile();
+        Files.write(file.toPath(), "app=1234\nbroken=\\uZZZZ\n".getBytes("UTF-8"));
+        Assert.assertFalse(Fingerprints.load(file).matches("app", "1234"), "nothing is trusted from a corrupt file");
+    }
+}
@@ -0,0 +1,98 @@
+package com.google.dart.util;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@Test
+public class TestJobLog {
+
+    @Test
+    public void testReplaysBufferedRecords() {
+        final JobLog log = new JobLog(null, 1000);
+        log.info("compiling");
+        log.warn("deprecated");
+        log.close();
+
+        final RecordingLog replayed = new RecordingLog();
+        log.replay(replayed);
+        Assert.assertEquals(replayed.lines, Arrays.asList("[info] compiling", "[warn] deprecated"));
+    }
+
+    @Test
+    public void testDropsRecordsBeyondBufferWithoutSpillFile() {
+        final JobLog log = new JobLog(null, 10);
+        log.info("0123456789");
+        log.info("dropped");
+        log.close();
+
+        final RecordingLog replayed = new RecordingLog();
+        log.replay(replayed);
+        Assert.assertEquals(replayed.lines, Arrays.asList("[info] 0123456789",
+            "[warn] The output exceeded 10 characters and was truncated."));
+    }
+
+    /**
+     * A spilled log keeps the warnings and the last info lines, e.g. the errors dart2js prints on stdout, in the
+     * order they were logged.
+     */
+    @Test
+    public void testSpillKeepsWarningsAndTail() throws IOException {
+        final File spillFile = new File(Files.createTempDirectory("log").toFile(), "logs/main.dart.log");
+        final JobLog log = new JobLog(spillFile, 20, 2);
+        log.info("line 1");
+        log.warn("warning 1");
+        log.info("line 2");
+        log.info("line 3");
+        log.info("line 4");
+        log.warn("warning 2");
+        log.info("error: line 5");
+        log.close();
+
+        final RecordingLog replayed = new RecordingLog();
+        log.replay(replayed);
+        Assert.assertEquals(replayed.lines, Arrays.asList(
+            "[warn] warning 1",
+            "[info] [3 lines omitted]",
+            "[info] line 4",
+            "[warn] warning 2",
+            "[info] error: line 5",
+            "[info] The complete output was written to " + spillFile.getAbsolutePath()));
+
+        Assert.assertEquals(Files.readAllLines(spillFile.toPath()), Arrays.asList("[INFO] line 1",
+            "[WARN] warning 1", "[INFO] line 2", "[INFO] line 3", "[INFO] line 4", "[WARN] warning 2",
+            "[INFO] error: line 5"));
+    }
+
+    private static class RecordingLog extends SystemStreamLog {
+
+        private final List<String> lines = new ArrayList<>();
+
+        @Override
+        public void debug(final CharSequence content) {
+            lines.add("[debug] " + content);
+        }
+
+        @Override
+        public void info(final CharSequence content) {
+            lines.add("[info] " + content);
+        }
+
+        @Override
+        public void warn(final CharSequence content) {
+            lines.add("[warn] " + content);
+        }
+
+        @Override
+        public void error(final CharSequence content) {
+            lines.add("[error] " + content);
+        }
+    }
+}
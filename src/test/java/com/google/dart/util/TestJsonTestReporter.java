@@ -0,0 +1,59 @@
+package com.google.dart.util;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@Test
+public class TestJsonTestReporter {
+
+    @Test
+    public void testCollectResults() {
+        final List<String> passedOn = new ArrayList<>();
+        final JsonTestReporter reporter = new JsonTestReporter(new StreamConsumer() {
+            @Override
+            public void consumeLine(final String line) {
+                passedOn.add(line);
+            }
+        });
+        for (final String line : Arrays.asList(
+            "Precompiling executables...",
+            "{\"protocolVersion\":\"0.1.1\",\"runnerVersion\":\"1.3.0\",\"type\":\"start\",\"time\":0}",
+            "{\"suite\":{\"id\":0,\"platform\":\"vm\",\"path\":\"test/range_test.dart\"},\"type\":\"suite\",\"time\":0}",
+            "{\"test\":{\"id\":1,\"name\":\"loading test/range_test.dart\",\"suiteID\":0,\"groupIDs\":[]},"
+                + "\"type\":\"testStart\",\"time\":1}",
+            "{\"testID\":1,\"result\":\"success\",\"skipped\":false,\"hidden\":true,\"type\":\"testDone\",\"time\":90}",
+            "{\"test\":{\"id\":3,\"name\":\"range iterates\",\"suiteID\":0,\"groupIDs\":[2]},"
+                + "\"type\":\"testStart\",\"time\":100}",
+            "{\"testID\":3,\"messageType\":\"print\",\"message\":\"hello \\\"world\\\"\",\"type\":\"print\",\"time\":110}",
+            "{\"testID\":3,\"result\":\"success\",\"skipped\":false,\"hidden\":false,\"type\":\"testDone\",\"time\":130}",
+            "{\"test\":{\"id\":4,\"name\":\"range fails\",\"suiteID\":0,\"groupIDs\":[2]},"
+                + "\"type\":\"testStart\",\"time\":140}",
+            "{\"testID\":4,\"error\":\"Expected: <1>\",\"stackTrace\":\"test/range_test.dart 12:5\","
+                + "\"isFailure\":true,\"type\":\"error\",\"time\":150}",
+            "{\"testID\":4,\"result\":\"failure\",\"skipped\":false,\"hidden\":false,\"type\":\"testDone\",\"time\":160}",
+            "{\"success\":false,\"type\":\"done\",\"time\":170}")) {
+            reporter.consumeLine(line);
+        }
+
+        Assert.assertEquals(passedOn, Arrays.asList("Precompiling executables..."));
+        Assert.assertEquals(reporter.getSuccess(), Boolean.FALSE);
+        Assert.assertEquals(reporter.getResults().size(), 2);
+
+        final TestResult passed = reporter.getResults().get(0);
+        Assert.assertEquals(passed.getSuite(), "test/range_test.dart");
+        Assert.assertEquals(passed.getName(), "range iterates");
+        Assert.assertEquals(passed.getStatus(), TestResult.Status.PASSED);
+        Assert.assertEquals(passed.getDurationMillis(), 30);
+        Assert.assertEquals(passed.getOutput(), "hello \"world\"\n");
+
+        final TestResult failed = reporter.getResults().get(1);
+        Assert.assertEquals(failed.getStatus(), TestResult.Status.FAILED);
+        Assert.assertEquals(failed.getMessage(), "Expected: <1>\ntest/range_test.dart 12:5");
+    }
+
+}
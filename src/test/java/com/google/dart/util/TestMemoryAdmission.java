@@ -0,0 +1,53 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@Test
+public class TestMemoryAdmission {
+
+    @Test
+    public void testHoldsBackProcessesBeyondBudget() throws InterruptedException {
+        final MemoryAdmission admission = new MemoryAdmission(100);
+        admission.acquire(60);
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        final Thread second = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    admission.acquire(60);
+                    admitted.countDown();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        second.setDaemon(true);
+        second.start();
+        Assert.assertFalse(admitted.await(200, TimeUnit.MILLISECONDS), "60 + 60 exceed the budget");
+
+        admission.release(60);
+        Assert.assertTrue(admitted.await(10, TimeUnit.SECONDS), "admitted once the first process finished");
+        admission.release(60);
+    }
+
+    @Test
+    public void testAdmitsSmallProcessesTogether() throws InterruptedException {
+        final MemoryAdmission admission = new MemoryAdmission(100);
+        admission.acquire(40);
+        admission.acquire(40);
+        admission.release(40);
+        admission.release(40);
+    }
+
+    @Test
+    public void testAlwaysAdmitsALoneProcess() throws InterruptedException {
+        final MemoryAdmission admission = new MemoryAdmission(100);
+        admission.acquire(Long.MAX_VALUE / 2);
+        admission.release(Long.MAX_VALUE / 2);
+    }
+}
@@ -0,0 +1,57 @@
+package com.google.dart.util;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+@Test
+public class TestParallelRunner {
+
+    @Test
+    public void testReturnsAllResults() throws Exception {
+        final List<ParallelRunner.Task<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final int value = i;
+            tasks.add(new ParallelRunner.Task<Integer>() {
+                @Override
+                public Integer run(final StreamConsumer output) {
+                    output.consumeLine("task " + value);
+                    return value;
+                }
+            });
+        }
+        final List<Integer> results = ParallelRunner.run(tasks, 3);
+        Collections.sort(results);
+        Assert.assertEquals(results.size(), 10);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(results.get(i).intValue(), i);
+        }
+    }
+
+    @Test
+    public void testNoTasks() throws Exception {
+        Assert.assertTrue(ParallelRunner.run(Collections.<ParallelRunner.Task<Object>>emptyList(), 4).isEmpty());
+    }
+
+    @Test
+    public void testPropagatesFailure() throws Exception {
+        final ParallelRunner.Task<Object> failing = new ParallelRunner.Task<Object>() {
+            @Override
+            public Object run(final StreamConsumer output) throws IOException {
+                throw new IOException("failed");
+            }
+        };
+        try {
+            ParallelRunner.run(Collections.singletonList(failing), 2);
+            Assert.fail("the failure of a task fails the run");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+@Test
+public class TestPathIndex {
+
+    @Test
+    public void testOwnerIsMatchedBySegments() {
+        final File foo = new File("/a/foo");
+        final File bar = new File("/a/foo/lib/bar");
+        final PathIndex<File> index = new PathIndex<>();
+        index.put(foo, foo);
+        index.put(bar, bar);
+
+        Assert.assertEquals(index.findOwner(new File("/a/foo/web/main.dart")), foo);
+        Assert.assertEquals(index.findOwner(new File("/a/foo/lib/bar/main.dart")), bar);
+        Assert.assertEquals(index.findOwner(new File("/a/foo/../foo/web")), foo);
+        Assert.assertEquals(index.findOwner(foo), foo);
+        Assert.assertNull(index.findOwner(new File("/a/foobar/web/main.dart")));
+        Assert.assertNull(index.findOwner(new File("/a")));
+    }
+
+    @Test
+    public void testNesting() {
+        final PathIndex<Boolean> index = new PathIndex<>();
+        index.put(new File("/a/foo"), true);
+        index.put(new File("/a/foo"), true);
+
+        Assert.assertEquals(index.size(), 1);
+        Assert.assertTrue(index.isNested(new File("/a/foo")));
+        Assert.assertTrue(index.isNested(new File("/a/foo/bar")));
+        Assert.assertTrue(index.isNested(new File("/a")));
+        Assert.assertFalse(index.hasDescendant(new File("/a/foo")));
+        Assert.assertFalse(index.isNested(new File("/a/foobar")));
+        Assert.assertFalse(index.isNested(new File("/b")));
+    }
+}
@@ -0,0 +1,82 @@
+package com.google.dart.util;
+
+import com.google.common.io.ByteStreams;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+@Test
+public class TestPrecompressor {
+
+    @Test
+    public void testCompressesChangedFilesOnly() throws IOException, InterruptedException {
+        final File root = Files.createTempDirectory("precompress").toFile();
+        final File js = write(new File(root, "web/main.dart.js"), "main() {}");
+        final File deps = write(new File(root, "web/main.dart.js.deps"), "file:///main.dart");
+        final File state = new File(root, "state.properties");
+
+        Assert.assertEquals(run(root, state), "1 file compressed (0 KB to 0 KB), 0 unchanged");
+        Assert.assertFalse(new File(deps.getPath() + ".gz").exists());
+        try (InputStream in = new GZIPInputStream(new FileInputStream(js.getPath() + ".gz"))) {
+            Assert.assertEquals(new String(ByteStreams.toByteArray(in), "UTF-8"), "main() {}");
+        }
+
+        Assert.assertEquals(run(root, state), "0 files compressed (0 KB to 0 KB), 1 unchanged");
+
+        // rewritten with the same content, e.g. restored from the build cache
+        write(js, "main() {}");
+        Assert.assertTrue(js.setLastModified(js.lastModified() + 2000));
+        Assert.assertEquals(run(root, state), "0 files compressed (0 KB to 0 KB), 1 unchanged");
+
+        write(js, "main() { print(1); }");
+        Assert.assertEquals(run(root, state), "1 file compressed (0 KB to 0 KB), 0 unchanged");
+    }
+
+    private static String run(final File root, final File state) throws IOException, InterruptedException {
+        final Precompressor precompressor = new Precompressor(root,
+            Collections.<CompressionCodec>singletonList(new GzipCodec()), Arrays.asList(".js", ".js.map"), state, 2);
+        try {
+            precompressor.submitDirectory(root);
+            precompressor.await();
+            return precompressor.getStatistics();
+        } finally {
+            precompressor.close();
+        }
+    }
+
+    private static File write(final File file, final String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+
+    @Test
+    public void testCreateCodec() {
+        Assert.assertTrue(Precompressor.createCodec(" gzip ") instanceof GzipCodec);
+        Assert.assertTrue(Precompressor.createCodec(GzipCodec.class.getName()) instanceof GzipCodec);
+        for (final String name : new String[]{"com.example.Missing", String.class.getName(),
+            FailingCodec.class.getName()}) {
+            try {
+                Precompressor.createCodec(name);
+                Assert.fail(name + " is no codec");
+            } catch (final IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage().contains(name), e.getMessage());
+            }
+        }
+    }
+
+    public static class FailingCodec extends GzipCodec {
+
+        public FailingCodec() {
+            throw new IllegalStateException("failed");
+        }
+    }
+}
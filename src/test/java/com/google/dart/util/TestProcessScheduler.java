@@ -0,0 +1,89 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Test
+public class TestProcessScheduler {
+
+    @Test
+    public void testLimitsRunningProcesses() throws InterruptedException {
+        final ProcessScheduler scheduler = new ProcessScheduler(2);
+        scheduler.acquire();
+        scheduler.acquire();
+
+        final List<String> granted = Collections.synchronizedList(new ArrayList<String>());
+        final Thread waiter = startWaiter(scheduler, "third", granted);
+        awaitWaiting(scheduler, 1);
+        Assert.assertTrue(granted.isEmpty());
+
+        scheduler.release();
+        waiter.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertEquals(granted, Collections.singletonList("third"));
+        Assert.assertEquals(scheduler.getWaitingCount(), 0);
+    }
+
+    @Test
+    public void testSharesPermitsFairlyBetweenOwners() throws InterruptedException {
+        final ProcessScheduler a = new ProcessScheduler(2);
+        final ProcessScheduler b = a.forOwner("b");
+        a.acquire();
+        a.acquire();
+
+        final List<String> granted = Collections.synchronizedList(new ArrayList<String>());
+        final Thread a1 = startWaiter(a, "a1", granted);
+        awaitWaiting(a, 1);
+        final Thread a2 = startWaiter(a, "a2", granted);
+        awaitWaiting(a, 2);
+        final Thread b1 = startWaiter(b, "b1", granted);
+        awaitWaiting(a, 3);
+
+        // a still runs a process, b none, so b is served first although a asked earlier
+        a.release();
+        b1.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertEquals(granted, Collections.singletonList("b1"));
+
+        a.release();
+        a1.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertEquals(granted, Arrays.asList("b1", "a1"));
+        b.release();
+        a2.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertEquals(granted, Arrays.asList("b1", "a1", "a2"));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testReleaseWithoutPermit() {
+        new ProcessScheduler(1).release();
+    }
+
+    private static Thread startWaiter(final ProcessScheduler scheduler, final String name, final List<String> granted) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.acquire();
+                    granted.add(name);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitWaiting(final ProcessScheduler scheduler, final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (scheduler.getWaitingCount() < count) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for " + count + " waiters");
+            Thread.sleep(5);
+        }
+    }
+}
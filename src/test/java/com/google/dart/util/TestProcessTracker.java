@@ -0,0 +1,141 @@
+package com.google.dart.util;
+
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Test
+public class TestProcessTracker {
+
+    @Test
+    public void testExecute() throws Exception {
+        if (OsUtil.isWindows()) {
+            return;
+        }
+        final List<String> out = new ArrayList<>();
+        final List<String> err = new ArrayList<>();
+        final int exitCode = new ProcessTracker().execute(shell("echo out; echo err >&2; exit 3"), collect(out),
+            collect(err));
+        Assert.assertEquals(exitCode, 3);
+        Assert.assertEquals(out, Collections.singletonList("out"));
+        Assert.assertEquals(err, Collections.singletonList("err"));
+    }
+
+    /**
+     * A deadline passing destroys all processes, including the children the sdk scripts start.
+     */
+    @Test
+    public void testDestroyAllKillsProcessTrees() throws Exception {
+        if (OsUtil.isWindows()) {
+            return;
+        }
+        final File pidFile = Files.createTempFile("child", ".pid").toFile();
+        final ProcessTracker tracker = new ProcessTracker();
+        final ScheduledExecutorService deadline = Executors.newSingleThreadScheduledExecutor();
+        final long start = System.currentTimeMillis();
+        try {
+            deadline.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    tracker.destroyAll();
+                }
+            }, 500, TimeUnit.MILLISECONDS);
+            tracker.execute(shell("sleep 60 & echo $! > " + pidFile.getAbsolutePath() + "; wait"), null, null);
+            Assert.fail("a destroyed process is cancelled");
+        } catch (final CommandLineException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Cancelled"), e.getMessage());
+        } finally {
+            deadline.shutdownNow();
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(30));
+        Assert.assertEquals(tracker.getRunningCount(), 0);
+
+        final String pid = new String(Files.readAllBytes(pidFile.toPath()), "UTF-8").trim();
+        final long until = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (isAlive(pid)) {
+            Assert.assertTrue(System.currentTimeMillis() < until, "the child " + pid + " was not killed");
+            Thread.sleep(20);
+        }
+
+        try {
+            tracker.execute(shell("true"), null, null);
+            Assert.fail("a destroyed tracker starts no processes");
+        } catch (final CommandLineException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Cancelled before start"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testInterruptKillsProcess() throws Exception {
+        if (OsUtil.isWindows()) {
+            return;
+        }
+        final ProcessTracker tracker = new ProcessTracker();
+        final Thread caller = Thread.currentThread();
+        final ScheduledExecutorService interrupter = Executors.newSingleThreadScheduledExecutor();
+        try {
+            interrupter.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    caller.interrupt();
+                }
+            }, 300, TimeUnit.MILLISECONDS);
+            tracker.execute(shell("sleep 60"), null, null);
+            Assert.fail("an interrupted caller stops waiting");
+        } catch (final InterruptedException e) {
+            Assert.assertEquals(tracker.getRunningCount(), 0);
+        } finally {
+            interrupter.shutdownNow();
+            Thread.interrupted();
+        }
+    }
+
+    private static boolean isAlive(final String pid) throws IOException {
+        final File status = new File("/proc/" + pid + "/status");
+        if (!status.isFile()) {
+            return false;
+        }
+        // a killed child not yet reaped by init is a zombie
+        try {
+            for (final String line : Files.readAllLines(status.toPath())) {
+                if (line.startsWith("State:")) {
+                    return !line.contains("Z");
+                }
+            }
+        } catch (final IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private static Commandline shell(final String script) {
+        final Commandline cl = new Commandline();
+        cl.setExecutable("/bin/sh");
+        cl.createArg().setValue("-c");
+        cl.createArg().setValue(script);
+        return cl;
+    }
+
+    private static StreamConsumer collect(final List<String> lines) {
+        return new StreamConsumer() {
+            @Override
+            public void consumeLine(final String line) {
+                synchronized (lines) {
+                    lines.add(line);
+                }
+            }
+        };
+    }
+}
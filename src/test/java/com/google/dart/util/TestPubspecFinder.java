@@ -0,0 +1,64 @@
+package com.google.dart.util;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+@Test
+public class TestPubspecFinder {
+
+    @Test
+    public void testPrunesGeneratedDirectoriesAndSymlinkCycles() throws IOException {
+        final File root = Files.createTempDirectory("pubspecs").toFile();
+        final File app = pubspec(root, "app");
+        pubspec(root, "app/packages/dependency");
+        pubspec(root, "app/build/web");
+        pubspec(root, ".hidden");
+        final File nested = pubspec(root, "lib/nested");
+        Files.createSymbolicLink(new File(root, "lib/nested/loop").toPath(), root.toPath());
+        Files.createSymbolicLink(new File(root, "link").toPath(), new File(root, "lib").toPath());
+
+        final List<File> expected = Arrays.asList(app, nested);
+        Assert.assertEquals(new PubspecFinder(1, new SystemStreamLog()).find(root), expected);
+
+        final File other = Files.createTempDirectory("pubspecs").toFile();
+        final File otherApp = pubspec(other, "other");
+        final Map<File, List<File>> found =
+            new PubspecFinder(2, new SystemStreamLog()).find(Arrays.asList(root, other));
+        Assert.assertEquals(found.get(root), expected);
+        Assert.assertEquals(found.get(other), Arrays.asList(otherApp));
+    }
+
+    /**
+     * Only pub's symlink farms are pruned, packages in directories named like them are found.
+     */
+    @Test
+    public void testFindsPackagesInDirectoriesNamedPackages() throws IOException {
+        final File root = Files.createTempDirectory("pubspecs").toFile();
+        final File real = pubspec(root, "src/main/dart/packages/foo");
+        final File build = pubspec(root, "src/main/dart/build/bar");
+        final File dependency = pubspec(root, "cache/dependency");
+        final File farm = new File(root, "web/packages");
+        Assert.assertTrue(farm.mkdirs());
+        Files.createSymbolicLink(new File(farm, "dependency").toPath(), dependency.getParentFile().toPath());
+
+        Assert.assertEquals(new PubspecFinder(1, new SystemStreamLog()).find(root),
+            Arrays.asList(dependency, build, real));
+        Assert.assertTrue(PubspecFinder.isPruned(farm.toPath()));
+        Assert.assertFalse(PubspecFinder.isPruned(new File(root, "src/main/dart/packages").toPath()));
+    }
+
+    private static File pubspec(final File root, final String directory) throws IOException {
+        final File pubspec = new File(root, directory + "/" + PubspecFinder.PUBSPEC);
+        Assert.assertTrue(pubspec.getParentFile().mkdirs());
+        Files.write(pubspec.toPath(), "name: test".getBytes("UTF-8"));
+        return pubspec;
+    }
+}
@@ -0,0 +1,56 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+@Test
+public class TestSdkDescriptor {
+
+    @Test
+    public void testParseFlags() {
+        final String help = "Usage: dart2js [options] dartfile\n"
+            + "  -o, --out=<file>           Generate the output into <file>.\n"
+            + "  -c, --enable-checked-mode  Insert run-time type checks.\n"
+            + "  --[no-]source-maps         Generate source maps, e.g. for built-in libraries.\n"
+            + "  --categories=<categories>  A comma separated list of -1 or more categories.\n";
+
+        Assert.assertEquals(SdkDescriptor.parseFlags(help), new HashSet<>(Arrays.asList("-o", "--out", "-c",
+            "--enable-checked-mode", "--source-maps", "--no-source-maps", "--categories")));
+    }
+
+    @Test
+    public void testProbesOncePerVersion() throws IOException {
+        if (OsUtil.isWindows()) {
+            return;
+        }
+        final File sdk = Files.createTempDirectory("sdk").toFile();
+        final File cache = Files.createTempDirectory("sdk-cache").toFile();
+        Files.write(new File(sdk, "version").toPath(), "1.24.3\n".getBytes("UTF-8"));
+        final File dart2js = new File(sdk, "bin/dart2js");
+        Assert.assertTrue(dart2js.getParentFile().mkdirs());
+        Files.write(dart2js.toPath(), "#!/bin/sh\necho '  --minify  Generate minified output.'\n".getBytes("UTF-8"));
+        Assert.assertTrue(dart2js.setExecutable(true));
+
+        final SdkDescriptor descriptor = SdkDescriptor.load(sdk, cache);
+        Assert.assertEquals(descriptor.getVersion(), "1.24.3");
+        Assert.assertEquals(descriptor.getExecutable(SdkDescriptor.DART2JS), dart2js);
+        Assert.assertTrue(descriptor.supports(SdkDescriptor.DART2JS, "--minify"));
+        Assert.assertFalse(descriptor.supports(SdkDescriptor.DART2JS, "--categories=Server"));
+        Assert.assertTrue(descriptor.supports(SdkDescriptor.DART, "--checked"), "unprobed tools support everything");
+        Assert.assertSame(SdkDescriptor.load(sdk, cache), descriptor);
+
+        // an sdk updated in place is probed again
+        Assert.assertTrue(dart2js.delete());
+        Assert.assertTrue(new File(sdk, "version").setLastModified(0));
+        Assert.assertEquals(cache.list().length, 1);
+        final SdkDescriptor updated = SdkDescriptor.load(sdk, cache);
+        Assert.assertNotSame(updated, descriptor);
+        Assert.assertTrue(updated.supports(SdkDescriptor.DART2JS, "--categories=Server"));
+    }
+}
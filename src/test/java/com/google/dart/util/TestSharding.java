@@ -0,0 +1,38 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+@Test
+public class TestSharding {
+
+    @Test
+    public void testEqualWeightsRoundRobin() {
+        final Map<String, Long> weights = new HashMap<>();
+        for (final String test : Arrays.asList("d", "b", "a", "c", "e")) {
+            weights.put(test, 1L);
+        }
+        final List<TreeSet<String>> shards = Sharding.distribute(weights, 2);
+        Assert.assertEquals(shards.get(0), new TreeSet<>(Arrays.asList("a", "c", "e")));
+        Assert.assertEquals(shards.get(1), new TreeSet<>(Arrays.asList("b", "d")));
+    }
+
+    @Test
+    public void testBalanceByWeight() {
+        final Map<String, Long> weights = new HashMap<>();
+        weights.put("slow", 90L);
+        weights.put("medium", 50L);
+        weights.put("fast1", 20L);
+        weights.put("fast2", 20L);
+        final List<TreeSet<String>> shards = Sharding.distribute(weights, 2);
+        Assert.assertEquals(shards.get(0), new TreeSet<>(Arrays.asList("slow")));
+        Assert.assertEquals(shards.get(1), new TreeSet<>(Arrays.asList("medium", "fast1", "fast2")));
+    }
+
+}
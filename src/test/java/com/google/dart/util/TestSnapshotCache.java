@@ -0,0 +1,49 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+@Test
+public class TestSnapshotCache {
+
+    @Test
+    public void testKeyFollowsImports() throws IOException {
+        final File packageRoot = Files.createTempDirectory("snapshots").toFile();
+        final File script = write(packageRoot, "tool/gen.dart", "import 'util.dart';\nmain() {}\n");
+        final File util = write(packageRoot, "tool/util.dart", "util() {}\n");
+        final SnapshotCache cache = new SnapshotCache(new File(packageRoot, "snapshots"));
+
+        final String key = cache.computeKey(script, packageRoot, "1.24.3", Collections.<String>emptyList());
+        Assert.assertEquals(cache.computeKey(script, packageRoot, "1.24.3", Collections.<String>emptyList()), key);
+        Assert.assertNotEquals(cache.computeKey(script, packageRoot, "1.24.2", Collections.<String>emptyList()), key);
+        Assert.assertNotEquals(cache.computeKey(script, packageRoot, "1.24.3", Collections.singletonList("-c")), key);
+
+        final File training = cache.createTemporaryFile("gen");
+        Files.write(training.toPath(), "snapshot".getBytes("UTF-8"));
+        cache.store("gen", key, training);
+        Assert.assertNotNull(cache.get("gen", key));
+
+        write(packageRoot, "tool/util.dart", "util() => 42;\n");
+        Assert.assertTrue(util.setLastModified(util.lastModified() + 2000));
+        final String changed = cache.computeKey(script, packageRoot, "1.24.3", Collections.<String>emptyList());
+        Assert.assertNotEquals(changed, key);
+        Assert.assertNull(cache.get("gen", changed));
+
+        final File retraining = cache.createTemporaryFile("gen");
+        Files.write(retraining.toPath(), "snapshot".getBytes("UTF-8"));
+        cache.store("gen", changed, retraining);
+        Assert.assertNull(cache.get("gen", key), "outdated snapshots are deleted");
+    }
+
+    private static File write(final File root, final String path, final String content) throws IOException {
+        final File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+}
@@ -0,0 +1,34 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+@Test
+public class TestSourceMaps {
+
+    @Test
+    public void testRelocatesRelativeSources() {
+        final File basedir = new File("/project");
+        final String sourceMap = "{\"version\":3,\"file\":\"main.dart.js\",\"sourceRoot\":\"\",\"sources\":["
+            + "\"../../../src/main/dart/web/main.dart\", \"org-dartlang-sdk:///sdk/lib/core/core.dart\","
+            + "\"/absolute/lib.dart\"],\"names\":[\"main\"],\"mappings\":\"AAAA\"}";
+
+        final String relocated = SourceMaps.relocate(sourceMap, new File(basedir, "target/dart2js-staging/web"),
+            new File(basedir, "target/classes/static/js/web"));
+        Assert.assertEquals(relocated, "{\"version\":3,\"file\":\"main.dart.js\",\"sourceRoot\":\"\",\"sources\":["
+            + "\"../../../../../src/main/dart/web/main.dart\", \"org-dartlang-sdk:///sdk/lib/core/core.dart\","
+            + "\"/absolute/lib.dart\"],\"names\":[\"main\"],\"mappings\":\"AAAA\"}");
+    }
+
+    @Test
+    public void testKeepsSourcesOfSameDirectoryAndSourceRoot() {
+        final File directory = new File("/project/target/web");
+        final String sourceMap = "{\"sources\":[\"../main.dart\"]}";
+        Assert.assertEquals(SourceMaps.relocate(sourceMap, directory, directory), sourceMap);
+
+        final String withRoot = "{\"sourceRoot\":\"http://localhost/\",\"sources\":[\"main.dart\"]}";
+        Assert.assertEquals(SourceMaps.relocate(withRoot, directory, new File("/project/target")), withRoot);
+    }
+}
@@ -0,0 +1,69 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+@Test
+public class TestSurefireReportWriter {
+
+    @Test
+    public void testClassName() {
+        Assert.assertEquals(SurefireReportWriter.toClassName("test/range_test.dart"), "test.range_test");
+        Assert.assertEquals(SurefireReportWriter.toClassName("pkg\\test\\a.b_test.dart"), "pkg.test.a.b_test");
+    }
+
+    @Test
+    public void testWritesOneReportPerSuite() throws Exception {
+        final File directory = new File(Files.createTempDirectory("reports").toFile(), "surefire-reports");
+        new SurefireReportWriter(directory).write(Arrays.asList(
+            new TestResult("test/a_test.dart", "adds <1> & \"2\"", TestResult.Status.PASSED, 1500, "",
+                "printed <output> & more"),
+            new TestResult("test/a_test.dart", "fails", TestResult.Status.FAILED, 20,
+                "Expected: <1>\n  Actual: <2>", ""),
+            new TestResult("test/a_test.dart", "skipped", TestResult.Status.SKIPPED, 0, "", ""),
+            new TestResult("test/b_test.dart", "b_test.dart", TestResult.Status.ERROR, 5,
+                "Test returned error code 254", null)));
+
+        final Element a = parse(new File(directory, "TEST-test.a_test.xml"));
+        Assert.assertEquals(a.getAttribute("name"), "test.a_test");
+        Assert.assertEquals(a.getAttribute("tests"), "3");
+        Assert.assertEquals(a.getAttribute("failures"), "1");
+        Assert.assertEquals(a.getAttribute("errors"), "0");
+        Assert.assertEquals(a.getAttribute("skipped"), "1");
+        Assert.assertEquals(a.getAttribute("time"), "1.520");
+
+        final NodeList testcases = a.getElementsByTagName("testcase");
+        Assert.assertEquals(testcases.getLength(), 3);
+        final Element passed = (Element) testcases.item(0);
+        Assert.assertEquals(passed.getAttribute("name"), "adds <1> & \"2\"");
+        Assert.assertEquals(passed.getAttribute("classname"), "test.a_test");
+        Assert.assertEquals(passed.getElementsByTagName("system-out").item(0).getTextContent(),
+            "printed <output> & more");
+        Assert.assertEquals(passed.getElementsByTagName("failure").getLength(), 0);
+
+        final Element failure = (Element) ((Element) testcases.item(1)).getElementsByTagName("failure").item(0);
+        Assert.assertEquals(failure.getAttribute("message"), "Expected: <1>", "the first line of the message");
+        Assert.assertEquals(failure.getTextContent(), "Expected: <1>\n  Actual: <2>");
+        Assert.assertEquals(((Element) testcases.item(1)).getElementsByTagName("system-out").getLength(), 0);
+        Assert.assertEquals(((Element) testcases.item(2)).getElementsByTagName("skipped").getLength(), 1);
+
+        final Element b = parse(new File(directory, "TEST-test.b_test.xml"));
+        Assert.assertEquals(b.getAttribute("errors"), "1");
+        final Element error = (Element) b.getElementsByTagName("error").item(0);
+        Assert.assertEquals(error.getAttribute("message"), "Test returned error code 254");
+    }
+
+    private static Element parse(final File report) throws Exception {
+        Assert.assertTrue(report.isFile(), report.getPath());
+        final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(report);
+        return document.getDocumentElement();
+    }
+}
@@ -0,0 +1,81 @@
+package com.google.dart.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+@Test
+public class TestSystemResources {
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    @Test
+    public void testCgroupV2() throws IOException {
+        final File cgroup = Files.createTempDirectory("cgroup").toFile();
+        write(cgroup, "cpu.max", "250000 100000\n");
+        write(cgroup, "memory.max", String.valueOf(4 * GB) + "\n");
+        write(cgroup, "memory.current", String.valueOf(GB) + "\n");
+
+        Assert.assertEquals(SystemResources.getAvailableProcessors(cgroup, 16), 3, "a fraction of a cpu is a cpu");
+        Assert.assertEquals(SystemResources.getAvailableProcessors(cgroup, 2), 2, "never more than the host has");
+        Assert.assertEquals(SystemResources.getMemoryLimit(cgroup, 64 * GB), 4 * GB);
+        Assert.assertEquals(SystemResources.getAvailableMemory(cgroup, 64 * GB, 32 * GB), 3 * GB);
+        Assert.assertEquals(SystemResources.getAvailableMemory(cgroup, 64 * GB, 2 * GB), 2 * GB,
+            "the host may have less left than the container");
+    }
+
+    @Test
+    public void testCgroupV2Unlimited() throws IOException {
+        final File cgroup = Files.createTempDirectory("cgroup").toFile();
+        write(cgroup, "cpu.max", "max 100000\n");
+        write(cgroup, "memory.max", "max\n");
+        write(cgroup, "memory.current", String.valueOf(GB) + "\n");
+
+        Assert.assertEquals(SystemResources.getAvailableProcessors(cgroup, 16), 16);
+        Assert.assertEquals(SystemResources.getMemoryLimit(cgroup, 64 * GB), 64 * GB);
+    }
+
+    @Test
+    public void testCgroupV1() throws IOException {
+        final File cgroup = Files.createTempDirectory("cgroup").toFile();
+        write(cgroup, "cpu/cpu.cfs_quota_us", "200000\n");
+        write(cgroup, "cpu/cpu.cfs_period_us", "100000\n");
+        write(cgroup, "memory/memory.limit_in_bytes", String.valueOf(8 * GB) + "\n");
+        write(cgroup, "memory/memory.usage_in_bytes", String.valueOf(6 * GB) + "\n");
+
+        Assert.assertEquals(SystemResources.getAvailableProcessors(cgroup, 16), 2);
+        Assert.assertEquals(SystemResources.getMemoryLimit(cgroup, 64 * GB), 8 * GB);
+        Assert.assertEquals(SystemResources.getAvailableMemory(cgroup, 64 * GB, 32 * GB), 2 * GB);
+    }
+
+    @Test
+    public void testCgroupV1Unlimited() throws IOException {
+        final File cgroup = Files.createTempDirectory("cgroup").toFile();
+        write(cgroup, "cpu/cpu.cfs_quota_us", "-1\n");
+        write(cgroup, "cpu/cpu.cfs_period_us", "100000\n");
+        // no limit is reported as a huge number
+        write(cgroup, "memory/memory.limit_in_bytes", "9223372036854771712\n");
+
+        Assert.assertEquals(SystemResources.getAvailableProcessors(cgroup, 16), 16);
+        Assert.assertEquals(SystemResources.getMemoryLimit(cgroup, 64 * GB), 64 * GB);
+        Assert.assertEquals(SystemResources.getAvailableMemory(cgroup, 64 * GB, 32 * GB), 32 * GB);
+    }
+
+    @Test
+    public void testNoCgroup() throws IOException {
+        final File cgroup = new File(Files.createTempDirectory("cgroup").toFile(), "missing");
+        Assert.assertEquals(SystemResources.getAvailableProcessors(cgroup, 4), 4);
+        Assert.assertEquals(SystemResources.getMemoryLimit(cgroup, 16 * GB), 16 * GB);
+        Assert.assertEquals(SystemResources.getAvailableMemory(cgroup, 16 * GB, 8 * GB), 8 * GB);
+        Assert.assertEquals(SystemResources.getMemoryLimit(cgroup, SystemResources.UNKNOWN), SystemResources.UNKNOWN);
+    }
+
+    private static void write(final File cgroup, final String name, final String content) throws IOException {
+        final File file = new File(cgroup, name);
+        Assert.assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,4 @@
+library graph;
+
+export 'src/node.dart'
+    if (dart.library.io) 'src/io_node.dart';
@@ -0,0 +1,3 @@
+part of graph.node;
+
+class Edge {}
@@ -0,0 +1,3 @@
+library graph.io_node;
+
+class Graph {}
@@ -0,0 +1,5 @@
+library graph.node;
+
+part 'edge.dart';
+
+class Graph {}
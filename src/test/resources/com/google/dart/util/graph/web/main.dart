@@ -0,0 +1,8 @@
+import 'dart:html';
+import 'package:graph/graph.dart' show Graph;
+// import 'unused.dart';
+/* import 'unused.dart'; */
+
+void main() {
+  new Graph();
+}